@@ -0,0 +1,37 @@
+package algorithm;
+
+/**
+ * Receives the items falling in the recommendation band or the promotion
+ * band during a band query of ItemScorer, so that the candidates need not be
+ * materialized. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public interface BandCollector {
+	/**
+	 ************************
+	 * An item falls in the recommendation band.
+	 *
+	 * @param paraItem
+	 *            The item.
+	 ************************
+	 */
+	public void addRecommendation(int paraItem);
+
+	/**
+	 ************************
+	 * An item falls in the promotion band.
+	 *
+	 * @param paraItem
+	 *            The item.
+	 ************************
+	 */
+	public void addPromotion(int paraItem);
+}// Of interface BandCollector
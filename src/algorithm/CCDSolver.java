@@ -0,0 +1,333 @@
+package algorithm;
+
+import common.ParallelTools;
+import datamodel.*;
+
+/**
+ * Cyclic coordinate descent (CCD++) for MF2DBoolean. Each round updates the
+ * subspaces one dimension at a time: the rank-one component of the dimension
+ * is added back to the residuals, the dimension is refit for all users and
+ * then all items with closed-form scalar updates, and the component is
+ * subtracted again. Users and items are handled in parallel since each row
+ * only writes its own values. The residuals are kept in a flat array aligned
+ * with the training ratings in user order, and the ratings are also indexed
+ * by item. There is no learning rate. The regularization is weighted by the
+ * number of ratings of each row, so that lambda has the same meaning as in
+ * the PQ regular scheme. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class CCDSolver {
+	/**
+	 * The default number of inner iterations for each dimension.
+	 */
+	public static final int DEFAULT_INNER_ITERATIONS = 1;
+
+	/**
+	 * The model to train.
+	 */
+	MF2DBoolean model;
+
+	/**
+	 * The number of inner iterations for each dimension.
+	 */
+	int innerIterations;
+
+	/**
+	 * The start position of the training ratings of each user. The last
+	 * element is the number of training ratings.
+	 */
+	int[] userStarts;
+
+	/**
+	 * The items of the training ratings in user order.
+	 */
+	int[] userOrderItems;
+
+	/**
+	 * The residuals of the training ratings in user order.
+	 */
+	double[] residuals;
+
+	/**
+	 * The start position of the training ratings of each item.
+	 */
+	int[] itemStarts;
+
+	/**
+	 * The users of the training ratings in item order.
+	 */
+	int[] itemOrderUsers;
+
+	/**
+	 * For the ratings in item order, their positions in the residual array.
+	 */
+	int[] itemOrderPositions;
+
+	/**
+	 * The half of lambda, for the PQ regular scheme.
+	 */
+	double halfLambda;
+
+	/**
+	 * The dimension being updated.
+	 */
+	int currentDimension;
+
+	/**
+	 * The dataset indexed by the last prepare().
+	 */
+	RatingSystem2DBoolean preparedDataset;
+
+	/**
+	 * The training version of the dataset at the last prepare().
+	 */
+	int preparedTrainingVersion;
+
+	/**
+	 * The user subspace the residuals were computed with.
+	 */
+	double[][] preparedUserSubspace;
+
+	/**
+	 * The item subspace the residuals were computed with.
+	 */
+	double[][] preparedItemSubspace;
+
+	/**
+	 * The user factor version of the model after the last prepare() or round.
+	 */
+	int preparedUserFactorVersion;
+
+	/**
+	 * The item factor version of the model after the last prepare() or round.
+	 */
+	int preparedItemFactorVersion;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraModel
+	 *            The model to train.
+	 * @param paraInnerIterations
+	 *            The number of inner iterations for each dimension.
+	 ************************
+	 */
+	public CCDSolver(MF2DBoolean paraModel, int paraInnerIterations) {
+		model = paraModel;
+		innerIterations = Math.max(1, paraInnerIterations);
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Index the training ratings and compute the residuals with the current
+	 * subspaces. runEpoch() invokes it whenever the training set or the
+	 * subspaces have been changed elsewhere.
+	 ************************
+	 */
+	public void prepare() {
+		RatingSystem2DBoolean tempDataset = model.dataset;
+		preparedDataset = tempDataset;
+		preparedTrainingVersion = tempDataset.getTrainingVersion();
+		preparedUserSubspace = model.userSubspace;
+		preparedItemSubspace = model.itemSubspace;
+		preparedUserFactorVersion = model.userFactorVersion;
+		preparedItemFactorVersion = model.itemFactorVersion;
+		int tempNumUsers = tempDataset.getNumUsers();
+		int tempNumItems = tempDataset.getNumItems();
+
+		// Step 1. Index by user.
+		userStarts = new int[tempNumUsers + 1];
+		int[] tempItemCounts = new int[tempNumItems];
+		for (int i = 0; i < tempNumUsers; i++) {
+			userStarts[i + 1] = userStarts[i];
+			for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+				if (tempDataset.getTrainIndication(i, j)) {
+					userStarts[i + 1]++;
+					tempItemCounts[tempDataset.getTriple(i, j).item]++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+
+		int tempNumRatings = userStarts[tempNumUsers];
+		userOrderItems = new int[tempNumRatings];
+		residuals = new double[tempNumRatings];
+		int tempPosition = 0;
+		Triple tempTriple;
+		for (int i = 0; i < tempNumUsers; i++) {
+			for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+				if (tempDataset.getTrainIndication(i, j)) {
+					tempTriple = tempDataset.getTriple(i, j);
+					userOrderItems[tempPosition] = tempTriple.item;
+					residuals[tempPosition] = tempTriple.rating
+							- model.predict(i, tempTriple.item);
+					tempPosition++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+
+		// Step 2. Index by item with counting sort.
+		itemStarts = new int[tempNumItems + 1];
+		for (int i = 0; i < tempNumItems; i++) {
+			itemStarts[i + 1] = itemStarts[i] + tempItemCounts[i];
+		} // Of for i
+		int[] tempNext = new int[tempNumItems];
+		System.arraycopy(itemStarts, 0, tempNext, 0, tempNumItems);
+		itemOrderUsers = new int[tempNumRatings];
+		itemOrderPositions = new int[tempNumRatings];
+		for (int i = 0; i < tempNumUsers; i++) {
+			for (int j = userStarts[i]; j < userStarts[i + 1]; j++) {
+				int tempSlot = tempNext[userOrderItems[j]]++;
+				itemOrderUsers[tempSlot] = i;
+				itemOrderPositions[tempSlot] = j;
+			} // Of for j
+		} // Of for i
+	}// Of prepare
+
+	/**
+	 ************************
+	 * Are the index and the residuals out of date?
+	 *
+	 * @return True if prepare() has not been invoked, or the training set or
+	 *         the subspaces have been changed since.
+	 ************************
+	 */
+	boolean isStale() {
+		return (residuals == null) || (preparedDataset != model.dataset)
+				|| (preparedTrainingVersion != model.dataset.getTrainingVersion())
+				|| (preparedUserSubspace != model.userSubspace)
+				|| (preparedItemSubspace != model.itemSubspace)
+				|| (preparedUserFactorVersion != model.userFactorVersion)
+				|| (preparedItemFactorVersion != model.itemFactorVersion);
+	}// Of isStale
+
+	/**
+	 ************************
+	 * One round, i.e., one sweep over all dimensions. The item factor version
+	 * of the model is increased.
+	 ************************
+	 */
+	public void runEpoch() {
+		if (isStale()) {
+			prepare();
+		} // Of if
+
+		if (model.regularScheme == MF2DBoolean.NO_REGULAR) {
+			halfLambda = 0;
+		} else {
+			halfLambda = model.lambda / 2;
+		} // Of if
+
+		for (int t = 0; t < model.rank; t++) {
+			currentDimension = t;
+			ParallelTools.parallelFor(model.userSubspace.length, ParallelTools.DEFAULT_NUM_CHUNKS,
+					addComponentTask);
+			for (int i = 0; i < innerIterations; i++) {
+				ParallelTools.parallelFor(model.userSubspace.length,
+						ParallelTools.DEFAULT_NUM_CHUNKS, userTask);
+				ParallelTools.parallelFor(model.itemSubspace.length,
+						ParallelTools.DEFAULT_NUM_CHUNKS, itemTask);
+			} // Of for i
+			ParallelTools.parallelFor(model.userSubspace.length, ParallelTools.DEFAULT_NUM_CHUNKS,
+					subtractComponentTask);
+		} // Of for t
+
+		double tempLossSum = 0;
+		for (int i = 0; i < residuals.length; i++) {
+			tempLossSum += residuals[i] * residuals[i];
+		} // Of for i
+		model.epochNumUpdates = residuals.length;
+		model.trainingLoss = tempLossSum / Math.max(residuals.length, 1);
+
+		// The residuals follow the new subspaces.
+		model.itemFactorVersion++;
+		preparedItemFactorVersion = model.itemFactorVersion;
+	}// Of runEpoch
+
+	/**
+	 ************************
+	 * Add or subtract the rank-one component of the current dimension to the
+	 * residuals of some users.
+	 ************************
+	 */
+	void updateResiduals(int paraStart, int paraEnd, double paraSign) {
+		int t = currentDimension;
+		double[][] tempItemSubspace = model.itemSubspace;
+		for (int i = paraStart; i < paraEnd; i++) {
+			double tempUserValue = paraSign * model.userSubspace[i][t];
+			for (int j = userStarts[i]; j < userStarts[i + 1]; j++) {
+				residuals[j] += tempUserValue * tempItemSubspace[userOrderItems[j]][t];
+			} // Of for j
+		} // Of for i
+	}// Of updateResiduals
+
+	/**
+	 * Add the component back to the residuals.
+	 */
+	ParallelTools.RangeTask addComponentTask = new ParallelTools.RangeTask() {
+		public void run(int paraChunk, int paraStart, int paraEnd) {
+			updateResiduals(paraStart, paraEnd, 1);
+		}// Of run
+	};
+
+	/**
+	 * Subtract the refit component from the residuals.
+	 */
+	ParallelTools.RangeTask subtractComponentTask = new ParallelTools.RangeTask() {
+		public void run(int paraChunk, int paraStart, int paraEnd) {
+			updateResiduals(paraStart, paraEnd, -1);
+		}// Of run
+	};
+
+	/**
+	 * Refit the current dimension of some users.
+	 */
+	ParallelTools.RangeTask userTask = new ParallelTools.RangeTask() {
+		public void run(int paraChunk, int paraStart, int paraEnd) {
+			int t = currentDimension;
+			double[][] tempItemSubspace = model.itemSubspace;
+			for (int i = paraStart; i < paraEnd; i++) {
+				double tempNumerator = 0;
+				double tempDenominator = halfLambda * (userStarts[i + 1] - userStarts[i]);
+				for (int j = userStarts[i]; j < userStarts[i + 1]; j++) {
+					double tempItemValue = tempItemSubspace[userOrderItems[j]][t];
+					tempNumerator += residuals[j] * tempItemValue;
+					tempDenominator += tempItemValue * tempItemValue;
+				} // Of for j
+				if (tempDenominator > 0) {
+					model.userSubspace[i][t] = tempNumerator / tempDenominator;
+				} // Of if
+			} // Of for i
+		}// Of run
+	};
+
+	/**
+	 * Refit the current dimension of some items.
+	 */
+	ParallelTools.RangeTask itemTask = new ParallelTools.RangeTask() {
+		public void run(int paraChunk, int paraStart, int paraEnd) {
+			int t = currentDimension;
+			double[][] tempUserSubspace = model.userSubspace;
+			for (int i = paraStart; i < paraEnd; i++) {
+				double tempNumerator = 0;
+				double tempDenominator = halfLambda * (itemStarts[i + 1] - itemStarts[i]);
+				for (int j = itemStarts[i]; j < itemStarts[i + 1]; j++) {
+					double tempUserValue = tempUserSubspace[itemOrderUsers[j]][t];
+					tempNumerator += residuals[itemOrderPositions[j]] * tempUserValue;
+					tempDenominator += tempUserValue * tempUserValue;
+				} // Of for j
+				if (tempDenominator > 0) {
+					model.itemSubspace[i][t] = tempNumerator / tempDenominator;
+				} // Of if
+			} // Of for i
+		}// Of run
+	};
+}// Of class CCDSolver
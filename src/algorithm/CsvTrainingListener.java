@@ -0,0 +1,75 @@
+package algorithm;
+
+import java.io.*;
+
+/**
+ * Writes the statistics of each epoch as a line of a CSV file. Each line is
+ * flushed so that the file can be watched while training. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class CsvTrainingListener implements TrainingListener {
+	/**
+	 * The writer.
+	 */
+	PrintWriter writer;
+
+	/**
+	 * A label for the run, e.g., the dataset name, written as the first
+	 * column.
+	 */
+	String label;
+
+	/**
+	 ************************
+	 * The first constructor. The header is written if the file is new or
+	 * empty.
+	 *
+	 * @param paraFilename
+	 *            The CSV file.
+	 * @param paraLabel
+	 *            The label of the run.
+	 * @param paraAppend
+	 *            Append to the existing file or not.
+	 * @throws IOException
+	 *             If the file cannot be opened.
+	 ************************
+	 */
+	public CsvTrainingListener(String paraFilename, String paraLabel, boolean paraAppend)
+			throws IOException {
+		File tempFile = new File(paraFilename);
+		boolean tempNeedHeader = !paraAppend || (tempFile.length() == 0);
+		writer = new PrintWriter(new BufferedWriter(new FileWriter(tempFile, paraAppend)));
+		label = paraLabel;
+		if (tempNeedHeader) {
+			writer.println("label," + EpochStatistics.CSV_HEADER);
+			writer.flush();
+		} // Of if
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Write a line.
+	 ************************
+	 */
+	public void epochFinished(EpochStatistics paraStatistics) {
+		writer.println(label + "," + paraStatistics.toCsvLine());
+		writer.flush();
+	}// Of epochFinished
+
+	/**
+	 ************************
+	 * Close the file.
+	 ************************
+	 */
+	public void close() {
+		writer.close();
+	}// Of close
+}// Of class CsvTrainingListener
@@ -0,0 +1,273 @@
+package algorithm;
+
+import datamodel.*;
+
+/**
+ * Retrain only the rows of MF2DBoolean touched by new ratings. The affected
+ * users are the changed users and the raters of the changed items. The
+ * affected items are the changed items and the items rated by the changed
+ * users. Each round visits the training ratings of the affected users. The
+ * user vectors are updated for all of them, while item vectors are only
+ * updated for affected items, so the rest of the model stays unchanged. The
+ * rounds stop when the local loss stabilizes. The cost is proportional to the
+ * ratings of the affected users instead of the whole dataset. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class DeltaRetrainer {
+	/**
+	 * The model.
+	 */
+	MF2DBoolean model;
+
+	/**
+	 * The dataset on which the index is built.
+	 */
+	RatingSystem2DBoolean indexedDataset;
+
+	/**
+	 * The start position of the raters of each item.
+	 */
+	int[] raterStarts;
+
+	/**
+	 * The raters of all items, grouped by item.
+	 */
+	int[] raters;
+
+	/**
+	 * The local loss of the last round.
+	 */
+	double localLoss;
+
+	/**
+	 * The number of ratings visited in each round.
+	 */
+	int numLocalRatings;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 ************************
+	 */
+	public DeltaRetrainer(MF2DBoolean paraModel) {
+		model = paraModel;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Build the item-to-raters index on all ratings if the dataset has
+	 * changed. The training indication is not considered, so that the index
+	 * remains valid when ratings are moved into the training set.
+	 ************************
+	 */
+	void buildIndex() {
+		RatingSystem2DBoolean tempDataset = model.dataset;
+		if (indexedDataset == tempDataset) {
+			return;
+		} // Of if
+
+		int tempNumItems = tempDataset.getNumItems();
+		raterStarts = new int[tempNumItems + 1];
+		for (int i = 0; i < tempDataset.getNumUsers(); i++) {
+			for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+				raterStarts[tempDataset.getTriple(i, j).item + 1]++;
+			} // Of for j
+		} // Of for i
+		for (int i = 0; i < tempNumItems; i++) {
+			raterStarts[i + 1] += raterStarts[i];
+		} // Of for i
+
+		raters = new int[raterStarts[tempNumItems]];
+		int[] tempNext = new int[tempNumItems];
+		System.arraycopy(raterStarts, 0, tempNext, 0, tempNumItems);
+		for (int i = 0; i < tempDataset.getNumUsers(); i++) {
+			for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+				raters[tempNext[tempDataset.getTriple(i, j).item]++] = i;
+			} // Of for j
+		} // Of for i
+
+		indexedDataset = tempDataset;
+	}// Of buildIndex
+
+	/**
+	 ************************
+	 * Retrain the rows touched by the changes.
+	 *
+	 * @param paraChangedUsers
+	 *            Users with new ratings, may be null.
+	 * @param paraChangedItems
+	 *            Items with new ratings, may be null.
+	 * @param paraMaxRounds
+	 *            The maximal number of rounds.
+	 * @param paraTolerance
+	 *            Stop if the relative improvement of the local loss is below
+	 *            it.
+	 * @return The number of rounds actually run.
+	 ************************
+	 */
+	public int retrain(int[] paraChangedUsers, int[] paraChangedItems, int paraMaxRounds,
+			double paraTolerance) {
+		buildIndex();
+		RatingSystem2DBoolean tempDataset = model.dataset;
+
+		// Step 1. The affected users and items.
+		boolean[] tempAffectedUsers = new boolean[tempDataset.getNumUsers()];
+		boolean[] tempAffectedItems = new boolean[tempDataset.getNumItems()];
+		int[] tempUsers = new int[tempDataset.getNumUsers()];
+		int tempNumUsers = 0;
+		if (paraChangedUsers != null) {
+			for (int i = 0; i < paraChangedUsers.length; i++) {
+				int tempUser = paraChangedUsers[i];
+				if (!tempAffectedUsers[tempUser]) {
+					tempAffectedUsers[tempUser] = true;
+					tempUsers[tempNumUsers++] = tempUser;
+				} // Of if
+				for (int j = 0; j < tempDataset.getUserNumRatings(tempUser); j++) {
+					tempAffectedItems[tempDataset.getTriple(tempUser, j).item] = true;
+				} // Of for j
+			} // Of for i
+		} // Of if
+		if (paraChangedItems != null) {
+			for (int i = 0; i < paraChangedItems.length; i++) {
+				int tempItem = paraChangedItems[i];
+				tempAffectedItems[tempItem] = true;
+				for (int j = raterStarts[tempItem]; j < raterStarts[tempItem + 1]; j++) {
+					if (!tempAffectedUsers[raters[j]]) {
+						tempAffectedUsers[raters[j]] = true;
+						tempUsers[tempNumUsers++] = raters[j];
+					} // Of if
+				} // Of for j
+			} // Of for i
+		} // Of if
+
+		// Step 2. Rounds.
+		double tempPreviousLoss = Double.MAX_VALUE;
+		int resultRounds = 0;
+		while (resultRounds < paraMaxRounds) {
+			updateLocal(tempUsers, tempNumUsers, tempAffectedItems);
+			resultRounds++;
+			if (Double.isNaN(localLoss)
+					|| (tempPreviousLoss - localLoss < paraTolerance * tempPreviousLoss)) {
+				break;
+			} // Of if
+			tempPreviousLoss = localLoss;
+		} // Of while
+
+		return resultRounds;
+	}// Of retrain
+
+	/**
+	 ************************
+	 * One round over the training ratings of the affected users, with the
+	 * update rule of the regular scheme of the model.
+	 ************************
+	 */
+	void updateLocal(int[] paraUsers, int paraNumUsers, boolean[] paraAffectedItems) {
+		MF2DBoolean tempModel = model;
+		RatingSystem2DBoolean tempDataset = tempModel.dataset;
+		int tempRank = tempModel.rank;
+		double tempAlpha = tempModel.alpha;
+		double tempLambda = (tempModel.regularScheme == MF2DBoolean.NO_REGULAR) ? 0
+				: tempModel.lambda;
+		boolean tempAdaptive = (tempModel.regularScheme == MF2DBoolean.ADAGRAD_REGULAR)
+				|| (tempModel.regularScheme == MF2DBoolean.ADAM_REGULAR);
+		boolean tempAdam = (tempModel.regularScheme == MF2DBoolean.ADAM_REGULAR);
+		if (tempAdaptive && ((tempModel.userSecondMoments == null)
+				|| (tempModel.userSecondMoments.length != tempModel.numUsers * tempRank))) {
+			tempModel.initializeOptimizerState();
+		} // Of if
+
+		double tempLossSum = 0;
+		int tempNumRatings = 0;
+		double tempUserCorrection1 = 1, tempUserCorrection2 = 1;
+		double tempItemCorrection1 = 1, tempItemCorrection2 = 1;
+		for (int i = 0; i < paraNumUsers; i++) {
+			int tempUser = paraUsers[i];
+			double[] tempUserVector = tempModel.userSubspace[tempUser];
+			for (int j = 0; j < tempDataset.getUserNumRatings(tempUser); j++) {
+				if (!tempDataset.getTrainIndication(tempUser, j)) {
+					continue;
+				} // Of if
+
+				Triple tempTriple = tempDataset.getTriple(tempUser, j);
+				int tempItem = tempTriple.item;
+				double[] tempItemVector = tempModel.itemSubspace[tempItem];
+				boolean tempUpdateItem = paraAffectedItems[tempItem];
+				double tempResidual = tempTriple.rating - tempModel.predict(tempUser, tempItem);
+				tempLossSum += tempResidual * tempResidual;
+				tempNumRatings++;
+
+				if (tempAdam) {
+					tempModel.userUpdateCounts[tempUser]++;
+					tempUserCorrection1 = 1 - Math.pow(tempModel.adamBeta1,
+							tempModel.userUpdateCounts[tempUser]);
+					tempUserCorrection2 = 1 - Math.pow(tempModel.adamBeta2,
+							tempModel.userUpdateCounts[tempUser]);
+					if (tempUpdateItem) {
+						tempModel.itemUpdateCounts[tempItem]++;
+						tempItemCorrection1 = 1 - Math.pow(tempModel.adamBeta1,
+								tempModel.itemUpdateCounts[tempItem]);
+						tempItemCorrection2 = 1 - Math.pow(tempModel.adamBeta2,
+								tempModel.itemUpdateCounts[tempItem]);
+					} // Of if
+				} // Of if
+
+				for (int k = 0; k < tempRank; k++) {
+					double tempUserGradient = 2 * tempResidual * tempItemVector[k]
+							- tempLambda * tempUserVector[k];
+					double tempItemGradient = 2 * tempResidual * tempUserVector[k]
+							- tempLambda * tempItemVector[k];
+					if (tempAdaptive) {
+						tempUserVector[k] += tempModel.adaptiveIncrement(
+								tempModel.userFirstMoments, tempModel.userSecondMoments,
+								tempUser * tempRank + k, tempUserGradient, tempAdam,
+								tempUserCorrection1, tempUserCorrection2);
+						if (tempUpdateItem) {
+							tempItemVector[k] += tempModel.adaptiveIncrement(
+									tempModel.itemFirstMoments, tempModel.itemSecondMoments,
+									tempItem * tempRank + k, tempItemGradient, tempAdam,
+									tempItemCorrection1, tempItemCorrection2);
+						} // Of if
+					} else {
+						tempUserVector[k] += tempAlpha * tempUserGradient;
+						if (tempUpdateItem) {
+							tempItemVector[k] += tempAlpha * tempItemGradient;
+						} // Of if
+					} // Of if
+				} // Of for k
+			} // Of for j
+		} // Of for i
+
+		numLocalRatings = tempNumRatings;
+		localLoss = tempLossSum / Math.max(tempNumRatings, 1);
+	}// Of updateLocal
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public double getLocalLoss() {
+		return localLoss;
+	}// Of getLocalLoss
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getNumLocalRatings() {
+		return numLocalRatings;
+	}// Of getNumLocalRatings
+}// Of class DeltaRetrainer
@@ -0,0 +1,202 @@
+package algorithm;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Data-parallel training on one host with several local processes. The
+ * current process runs the parameter server, and each worker runs in a JVM of
+ * its own with the same class path. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class DistributedTraining {
+
+	/**
+	 ************************
+	 * Train with local worker processes.
+	 *
+	 * @param paraFilename
+	 *            The data filename.
+	 * @param paraNumUsers
+	 *            The number of users.
+	 * @param paraNumItems
+	 *            The number of items.
+	 * @param paraNumRatings
+	 *            The number of ratings.
+	 * @param paraRatingLowerBound
+	 *            The lower bound of ratings.
+	 * @param paraRatingUpperBound
+	 *            The upper bound of ratings.
+	 * @param paraCompress
+	 *            Is the data in compress format?
+	 * @param paraNumWorkers
+	 *            The number of worker processes.
+	 * @param paraStaleness
+	 *            The staleness bound in rounds.
+	 * @param paraRank
+	 *            The rank.
+	 * @param paraAlpha
+	 *            The learning rate.
+	 * @param paraLambda
+	 *            The regular parameter.
+	 * @param paraRegularScheme
+	 *            NO_REGULAR or PQ_REGULAR. The adaptive schemes are not
+	 *            supported by the workers.
+	 * @param paraRounds
+	 *            The number of rounds.
+	 * @param paraCheckpointFilename
+	 *            Where to save the trained model, null for not saving.
+	 * @throws Exception
+	 *             If the workers cannot be started or fail.
+	 ************************
+	 */
+	public static void train(String paraFilename, int paraNumUsers, int paraNumItems,
+			int paraNumRatings, double paraRatingLowerBound, double paraRatingUpperBound,
+			boolean paraCompress, int paraNumWorkers, int paraStaleness, int paraRank,
+			double paraAlpha, double paraLambda, int paraRegularScheme, int paraRounds,
+			String paraCheckpointFilename) throws Exception {
+		if ((paraRegularScheme != MF2DBoolean.NO_REGULAR)
+				&& (paraRegularScheme != MF2DBoolean.PQ_REGULAR)) {
+			throw new Exception("Error occurred in DistributedTraining.train(): "
+					+ "unsupported regular scheme " + paraRegularScheme);
+		} // Of if
+
+		// Step 1. Start the server.
+		ParameterServer tempServer = new ParameterServer(paraNumWorkers, paraNumItems, paraRank,
+				paraRounds, paraStaleness, 0.5, 0);
+		int tempPort = tempServer.start(0);
+		System.out.println("Parameter server listening on port " + tempPort);
+
+		// Step 2. Start the workers.
+		String tempJava = System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java";
+		String tempClassPath = System.getProperty("java.class.path");
+		Process[] tempProcesses = new Process[paraNumWorkers];
+		for (int i = 0; i < paraNumWorkers; i++) {
+			List<String> tempCommand = new ArrayList<String>();
+			tempCommand.add(tempJava);
+			tempCommand.add("-cp");
+			tempCommand.add(tempClassPath);
+			tempCommand.add(DistributedWorker.class.getName());
+			tempCommand.add("127.0.0.1");
+			tempCommand.add("" + tempPort);
+			tempCommand.add("" + i);
+			tempCommand.add("" + paraNumWorkers);
+			tempCommand.add(paraFilename);
+			tempCommand.add("" + paraNumUsers);
+			tempCommand.add("" + paraNumItems);
+			tempCommand.add("" + paraNumRatings);
+			tempCommand.add("" + paraRatingLowerBound);
+			tempCommand.add("" + paraRatingUpperBound);
+			tempCommand.add("" + paraCompress);
+			tempCommand.add("" + paraRank);
+			tempCommand.add("" + paraAlpha);
+			tempCommand.add("" + paraLambda);
+			tempCommand.add("" + paraRegularScheme);
+			tempCommand.add("" + paraRounds);
+
+			ProcessBuilder tempBuilder = new ProcessBuilder(tempCommand);
+			tempBuilder.inheritIO();
+			tempProcesses[i] = tempBuilder.start();
+		} // Of for i
+
+		// Step 3. Wait, polling all workers so that the others are stopped as
+		// soon as one fails.
+		int tempNumRunning = paraNumWorkers;
+		boolean[] tempExited = new boolean[paraNumWorkers];
+		while (tempNumRunning > 0) {
+			for (int i = 0; i < paraNumWorkers; i++) {
+				if (tempExited[i]) {
+					continue;
+				} // Of if
+
+				int tempExitValue;
+				try {
+					tempExitValue = tempProcesses[i].exitValue();
+				} catch (IllegalThreadStateException ee) {
+					// Still running.
+					continue;
+				} // Of try
+				tempExited[i] = true;
+				tempNumRunning--;
+				if (tempExitValue != 0) {
+					destroyAll(tempProcesses);
+					throw new Exception("Error occurred in DistributedTraining.train(): worker #"
+							+ i + " exited with " + tempExitValue);
+				} // Of if
+			} // Of for i
+
+			if (tempServer.hasFailed()) {
+				destroyAll(tempProcesses);
+				break;
+			} // Of if
+			if (tempNumRunning > 0) {
+				Thread.sleep(100);
+			} // Of if
+		} // Of while
+		tempServer.awaitCompletion();
+
+		System.out.println(tempServer.getThroughputReport());
+
+		// Step 4. Save the model.
+		if (paraCheckpointFilename != null) {
+			tempServer.saveCheckpoint(paraCheckpointFilename, paraRegularScheme, paraAlpha,
+					paraLambda, 0.5);
+			System.out.println("Model saved to " + paraCheckpointFilename);
+		} // Of if
+	}// Of train
+
+	/**
+	 ************************
+	 * Stop all worker processes.
+	 *
+	 * @param paraProcesses
+	 *            The processes.
+	 ************************
+	 */
+	static void destroyAll(Process[] paraProcesses) {
+		for (int i = 0; i < paraProcesses.length; i++) {
+			paraProcesses[i].destroy();
+		} // Of for i
+	}// Of destroyAll
+
+	/**
+	 ************************
+	 * Train on MovieLens with three workers and check the checkpoint.
+	 ************************
+	 */
+	public static void testDistributedTraining() {
+		try {
+			train("data/movielens943u1682m.txt", 943, 1682, 100000, 1, 5, true, 3, 1, 10, 0.0001,
+					0.005, MF2DBoolean.PQ_REGULAR, 50, "data/movielens943u1682m.checkpoint");
+
+			datamodel.RatingSystem2DBoolean tempDataset = new datamodel.RatingSystem2DBoolean(
+					"data/movielens943u1682m.txt", 943, 1682, 100000, 1, 5, 3.5, true);
+			tempDataset.initializeTraining(0);
+			MF2DBoolean tempLearner = new MF2DBoolean(tempDataset);
+			tempLearner.setParameters(10, 0.0001, 0.005, MF2DBoolean.PQ_REGULAR, 50);
+			if (MFCheckpoint.load(tempLearner, "data/movielens943u1682m.checkpoint")) {
+				System.out.println("On all data, " + tempLearner.evaluate());
+			} // Of if
+		} catch (Exception ee) {
+			ee.printStackTrace();
+		} // Of try
+	}// Of testDistributedTraining
+
+	/**
+	 ************************
+	 * @param args
+	 ************************
+	 */
+	public static void main(String args[]) {
+		testDistributedTraining();
+	}// Of main
+}// Of class DistributedTraining
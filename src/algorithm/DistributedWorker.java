@@ -0,0 +1,313 @@
+package algorithm;
+
+import java.io.*;
+import java.net.*;
+import java.util.Random;
+
+import datamodel.*;
+
+/**
+ * A worker of distributed training. It owns the users u with u % numWorkers
+ * == workerIndex, keeps their user vectors locally, and exchanges the item
+ * subspace with the parameter server. Each round it pulls the item subspace,
+ * runs SGD over the ratings of its shard, and pushes the deltas of the items
+ * it touched. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class DistributedWorker {
+	/**
+	 * The dataset, only the rows of the shard are kept.
+	 */
+	RatingSystem2DBoolean dataset;
+
+	/**
+	 * The index of the worker.
+	 */
+	int workerIndex;
+
+	/**
+	 * The number of workers.
+	 */
+	int numWorkers;
+
+	/**
+	 * The rank.
+	 */
+	int rank;
+
+	/**
+	 * The learning rate.
+	 */
+	double alpha;
+
+	/**
+	 * The regular parameter.
+	 */
+	double lambda;
+
+	/**
+	 * The regular scheme, NO_REGULAR or PQ_REGULAR.
+	 */
+	int regularScheme;
+
+	/**
+	 * The user vectors of the shard, indexed by user / numWorkers.
+	 */
+	double[][] userSubspace;
+
+	/**
+	 * The item subspace of the current round, row by row.
+	 */
+	double[] itemFactors;
+
+	/**
+	 * The item subspace pulled at the beginning of the current round.
+	 */
+	double[] pulledItemFactors;
+
+	/**
+	 * Which items are touched in the current round.
+	 */
+	boolean[] touchedItems;
+
+	/**
+	 ************************
+	 * The first constructor. The dataset fingerprint should be computed
+	 * before calling it since only the shard is kept.
+	 *
+	 * @param paraDataset
+	 *            The dataset.
+	 * @param paraWorkerIndex
+	 *            The index of the worker.
+	 * @param paraNumWorkers
+	 *            The number of workers.
+	 * @param paraRank
+	 *            The rank.
+	 * @param paraAlpha
+	 *            The learning rate.
+	 * @param paraLambda
+	 *            The regular parameter.
+	 * @param paraRegularScheme
+	 *            NO_REGULAR or PQ_REGULAR.
+	 * @param paraRange
+	 *            The range of the initial values.
+	 ************************
+	 */
+	public DistributedWorker(RatingSystem2DBoolean paraDataset, int paraWorkerIndex,
+			int paraNumWorkers, int paraRank, double paraAlpha, double paraLambda,
+			int paraRegularScheme, double paraRange) {
+		if ((paraRegularScheme != MF2DBoolean.NO_REGULAR)
+				&& (paraRegularScheme != MF2DBoolean.PQ_REGULAR)) {
+			throw new IllegalArgumentException("Error occurred in DistributedWorker(): "
+					+ "unsupported regular scheme " + paraRegularScheme);
+		} // Of if
+		dataset = paraDataset;
+		workerIndex = paraWorkerIndex;
+		numWorkers = paraNumWorkers;
+		rank = paraRank;
+		alpha = paraAlpha;
+		lambda = paraLambda;
+		regularScheme = paraRegularScheme;
+
+		dataset.retainUserShard(numWorkers, workerIndex);
+		dataset.setAllTraining();
+
+		Random tempRandom = new Random(workerIndex);
+		int tempNumOwned = (dataset.getNumUsers() - workerIndex + numWorkers - 1) / numWorkers;
+		userSubspace = new double[tempNumOwned][rank];
+		for (int i = 0; i < tempNumOwned; i++) {
+			for (int j = 0; j < rank; j++) {
+				userSubspace[i][j] = (tempRandom.nextDouble() - 0.5) * 2 * paraRange;
+			} // Of for j
+		} // Of for i
+
+		itemFactors = new double[dataset.getNumItems() * rank];
+		pulledItemFactors = new double[itemFactors.length];
+		touchedItems = new boolean[dataset.getNumItems()];
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Connect to the server and train.
+	 *
+	 * @param paraHost
+	 *            The host of the server.
+	 * @param paraPort
+	 *            The port of the server.
+	 * @param paraFingerprint
+	 *            The fingerprint of the whole dataset.
+	 * @param paraRounds
+	 *            The number of rounds.
+	 * @throws IOException
+	 *             If the communication fails.
+	 ************************
+	 */
+	public void run(String paraHost, int paraPort, long paraFingerprint, int paraRounds)
+			throws IOException {
+		Socket tempSocket = new Socket(paraHost, paraPort);
+		tempSocket.setTcpNoDelay(true);
+		DataInputStream tempInput = new DataInputStream(
+				new BufferedInputStream(tempSocket.getInputStream(), 1 << 16));
+		DataOutputStream tempOutput = new DataOutputStream(
+				new BufferedOutputStream(tempSocket.getOutputStream(), 1 << 16));
+
+		// Step 1. Hello.
+		tempOutput.writeInt(workerIndex);
+		tempOutput.writeLong(paraFingerprint);
+		tempOutput.flush();
+		if ((tempInput.readInt() != dataset.getNumItems()) || (tempInput.readInt() != rank)) {
+			tempSocket.close();
+			throw new IOException("Error occurred in DistributedWorker.run(): "
+					+ "the server disagrees on the number of items or the rank.");
+		} // Of if
+
+		// Step 2. Rounds.
+		double[] tempDelta = new double[rank];
+		for (int i = 0; i < paraRounds; i++) {
+			// Step 2.1 Pull.
+			tempOutput.writeInt(ParameterServer.OP_PULL);
+			tempOutput.writeInt(i);
+			tempOutput.flush();
+			ParameterServer.readDoubles(tempInput, pulledItemFactors);
+			System.arraycopy(pulledItemFactors, 0, itemFactors, 0, itemFactors.length);
+
+			// Step 2.2 Local SGD.
+			long tempStart = System.nanoTime();
+			long tempNumUpdates = 0;
+			double tempLossSum = 0;
+			for (int u = workerIndex, j = 0; u < dataset.getNumUsers(); u += numWorkers, j++) {
+				for (int k = 0; k < dataset.getUserNumRatings(u); k++) {
+					Triple tempTriple = dataset.getTriple(u, k);
+					double tempResidual = updateOne(userSubspace[j], tempTriple.item,
+							tempTriple.rating);
+					tempLossSum += tempResidual * tempResidual;
+					tempNumUpdates++;
+				} // Of for k
+			} // Of for u
+			long tempNanos = System.nanoTime() - tempStart;
+
+			// Step 2.3 Push deltas of touched items.
+			int tempNumTouched = 0;
+			for (int j = 0; j < touchedItems.length; j++) {
+				if (touchedItems[j]) {
+					tempNumTouched++;
+				} // Of if
+			} // Of for j
+			tempOutput.writeInt(ParameterServer.OP_PUSH);
+			tempOutput.writeInt(tempNumTouched);
+			for (int j = 0; j < touchedItems.length; j++) {
+				if (!touchedItems[j]) {
+					continue;
+				} // Of if
+				touchedItems[j] = false;
+
+				for (int k = 0; k < rank; k++) {
+					tempDelta[k] = itemFactors[j * rank + k] - pulledItemFactors[j * rank + k];
+				} // Of for k
+				tempOutput.writeInt(j);
+				ParameterServer.writeDoubles(tempOutput, tempDelta);
+			} // Of for j
+			tempOutput.writeLong(tempNumUpdates);
+			tempOutput.writeLong(tempNanos);
+			tempOutput.writeDouble(tempLossSum);
+			tempOutput.flush();
+
+			System.out.println("Worker #" + workerIndex + ", round " + i + ": "
+					+ (long) (tempNumUpdates / (tempNanos / 1e9)) + " updates/s.");
+		} // Of for i
+
+		// Step 3. Report user vectors.
+		tempOutput.writeInt(ParameterServer.OP_DONE);
+		tempOutput.writeInt(dataset.getNumUsers());
+		tempOutput.writeInt(userSubspace.length);
+		for (int j = 0; j < userSubspace.length; j++) {
+			tempOutput.writeInt(workerIndex + j * numWorkers);
+			ParameterServer.writeDoubles(tempOutput, userSubspace[j]);
+		} // Of for j
+		tempOutput.flush();
+		tempSocket.close();
+	}// Of run
+
+	/**
+	 ************************
+	 * Update with one rating in the same way as MF2DBoolean.
+	 *
+	 * @param paraUserVector
+	 *            The user vector.
+	 * @param paraItem
+	 *            The item.
+	 * @param paraRating
+	 *            The rating.
+	 * @return The residual before updating.
+	 ************************
+	 */
+	double updateOne(double[] paraUserVector, int paraItem, double paraRating) {
+		int tempOffset = paraItem * rank;
+		double tempPrediction = 0;
+		for (int k = 0; k < rank; k++) {
+			tempPrediction += paraUserVector[k] * itemFactors[tempOffset + k];
+		} // Of for k
+		double resultResidual = paraRating - tempPrediction;
+
+		boolean tempRegular = (regularScheme != MF2DBoolean.NO_REGULAR);
+		for (int k = 0; k < rank; k++) {
+			double tempValue = 2 * resultResidual * itemFactors[tempOffset + k];
+			if (tempRegular) {
+				tempValue -= lambda * paraUserVector[k];
+			} // Of if
+			paraUserVector[k] += alpha * tempValue;
+		} // Of for k
+		for (int k = 0; k < rank; k++) {
+			double tempValue = 2 * resultResidual * paraUserVector[k];
+			if (tempRegular) {
+				tempValue -= lambda * itemFactors[tempOffset + k];
+			} // Of if
+			itemFactors[tempOffset + k] += alpha * tempValue;
+		} // Of for k
+		touchedItems[paraItem] = true;
+
+		return resultResidual;
+	}// Of updateOne
+
+	/**
+	 ************************
+	 * The entrance of a worker process. Arguments: host, port, worker index,
+	 * number of workers, data filename, number of users, number of items,
+	 * number of ratings, rating lower bound, rating upper bound, compressed,
+	 * rank, alpha, lambda, regular scheme, rounds.
+	 ************************
+	 */
+	public static void main(String args[]) {
+		try {
+			int tempWorkerIndex = Integer.parseInt(args[2]);
+			int tempNumWorkers = Integer.parseInt(args[3]);
+			// Only the shard is read. The fingerprint is still that of the
+			// whole data.
+			RatingSystem2DBoolean tempDataset = new RatingSystem2DBoolean(args[4],
+					Integer.parseInt(args[5]), Integer.parseInt(args[6]),
+					Integer.parseInt(args[7]), Double.parseDouble(args[8]),
+					Double.parseDouble(args[9]), RatingSystem2DBoolean.DEFAULT_LIKE_THRESHOLD,
+					Boolean.parseBoolean(args[10]), tempNumWorkers, tempWorkerIndex);
+			long tempFingerprint = tempDataset.computeFingerprint();
+
+			DistributedWorker tempWorker = new DistributedWorker(tempDataset, tempWorkerIndex,
+					tempNumWorkers, Integer.parseInt(args[11]),
+					Double.parseDouble(args[12]), Double.parseDouble(args[13]),
+					Integer.parseInt(args[14]), 0.5);
+			tempWorker.run(args[0], Integer.parseInt(args[1]), tempFingerprint,
+					Integer.parseInt(args[15]));
+		} catch (Exception ee) {
+			System.out.println("Error occurred in DistributedWorker.main(): " + ee);
+			ee.printStackTrace();
+			System.exit(1);
+		} // Of try
+	}// Of main
+}// Of class DistributedWorker
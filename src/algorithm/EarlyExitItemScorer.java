@@ -0,0 +1,283 @@
+package algorithm;
+
+/**
+ * Band queries of ItemScorer with early exit. The dimensions are visited in
+ * the descending order of their energy over the items, so that the partial
+ * inner product approaches the score quickly. Every few dimensions, the rest
+ * of the inner product is bounded by the product of the norms of the
+ * remaining parts of the two vectors (Cauchy-Schwarz), with the suffix norms
+ * of the items precomputed. The item is settled as soon as the interval of
+ * possible scores falls in one band. The bands are exactly those of the
+ * linear scan. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class EarlyExitItemScorer {
+	/**
+	 * The default number of dimensions between two checks.
+	 */
+	public static final int DEFAULT_CHECK_INTERVAL = 4;
+
+	/**
+	 * The scorer providing the packed vectors.
+	 */
+	ItemScorer scorer;
+
+	/**
+	 * The number of dimensions between two checks.
+	 */
+	int checkInterval = DEFAULT_CHECK_INTERVAL;
+
+	/**
+	 * The dimensions in the visiting order.
+	 */
+	int[] dimensionOrder;
+
+	/**
+	 * The item vectors with the dimensions in the visiting order.
+	 */
+	double[] orderedFactors;
+
+	/**
+	 * The number of checks for each item.
+	 */
+	int numChecks;
+
+	/**
+	 * The norm of the remaining dimensions of each item at each check.
+	 */
+	double[] suffixNorms;
+
+	/**
+	 * The pack count of the scorer for the ordered copy.
+	 */
+	int orderedPackCount = -1;
+
+	/**
+	 * The user vector in the visiting order.
+	 */
+	double[] userFactors;
+
+	/**
+	 * The norm of the remaining dimensions of the user at each check.
+	 */
+	double[] userSuffixNorms;
+
+	/**
+	 * The number of multiply-adds in the last query.
+	 */
+	long lastNumMultiplyAdds;
+
+	/**
+	 * The number of scored items in the last query.
+	 */
+	int lastNumScored;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraScorer
+	 *            The scorer.
+	 ************************
+	 */
+	public EarlyExitItemScorer(ItemScorer paraScorer) {
+		scorer = paraScorer;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Setter. It takes effect from the next refresh.
+	 ************************
+	 */
+	public void setCheckInterval(int paraValue) {
+		checkInterval = Math.max(1, paraValue);
+		orderedPackCount = -1;
+	}// Of setCheckInterval
+
+	/**
+	 ************************
+	 * Reorder the dimensions and compute the suffix norms if the packed
+	 * vectors of the scorer have changed.
+	 ************************
+	 */
+	void refresh() {
+		scorer.refresh();
+		if (orderedPackCount == scorer.packCount) {
+			return;
+		} // Of if
+
+		int tempNumItems = scorer.numItems;
+		int tempRank = scorer.packedRank;
+		double[] tempPacked = scorer.packedFactors;
+
+		// Step 1. Sort the dimensions by energy, descending.
+		double[] tempEnergies = new double[tempRank];
+		for (int i = 0; i < tempNumItems; i++) {
+			for (int k = 0; k < tempRank; k++) {
+				double tempValue = tempPacked[i * tempRank + k];
+				tempEnergies[k] += tempValue * tempValue;
+			} // Of for k
+		} // Of for i
+		dimensionOrder = new int[tempRank];
+		for (int k = 0; k < tempRank; k++) {
+			dimensionOrder[k] = k;
+		} // Of for k
+		for (int k = 1; k < tempRank; k++) {
+			int tempDimension = dimensionOrder[k];
+			int j = k - 1;
+			while ((j >= 0) && (tempEnergies[dimensionOrder[j]] < tempEnergies[tempDimension])) {
+				dimensionOrder[j + 1] = dimensionOrder[j];
+				j--;
+			} // Of while
+			dimensionOrder[j + 1] = tempDimension;
+		} // Of for k
+
+		// Step 2. Reorder, and the suffix norms after each check.
+		numChecks = (tempRank - 1) / checkInterval;
+		orderedFactors = new double[tempNumItems * tempRank];
+		suffixNorms = new double[tempNumItems * Math.max(1, numChecks)];
+		for (int i = 0; i < tempNumItems; i++) {
+			int tempOffset = i * tempRank;
+			for (int k = 0; k < tempRank; k++) {
+				orderedFactors[tempOffset + k] = tempPacked[tempOffset + dimensionOrder[k]];
+			} // Of for k
+			double tempSquared = 0;
+			for (int k = tempRank - 1; k >= checkInterval; k--) {
+				tempSquared += orderedFactors[tempOffset + k] * orderedFactors[tempOffset + k];
+				if (k % checkInterval == 0) {
+					suffixNorms[i * numChecks + k / checkInterval - 1] = Math.sqrt(tempSquared);
+				} // Of if
+			} // Of for k
+		} // Of for i
+
+		userFactors = new double[tempRank];
+		userSuffixNorms = new double[Math.max(1, numChecks)];
+		orderedPackCount = scorer.packCount;
+	}// Of refresh
+
+	/**
+	 ************************
+	 * Put the eligible items of the user into the bands, as
+	 * ItemScorer.scoreIntoBands(), with early exit. The candidates are in the
+	 * ascending order of items.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraRecommendThreshold
+	 *            The threshold of the recommendation band.
+	 * @param paraPromoteThreshold
+	 *            The threshold of the promotion band.
+	 * @param paraCollector
+	 *            Receives the items of the bands.
+	 ************************
+	 */
+	public void scoreIntoBands(int paraUser, long[] paraExcluded, double paraRecommendThreshold,
+			double paraPromoteThreshold, BandCollector paraCollector) {
+		refresh();
+		int tempRank = scorer.packedRank;
+		int tempInterval = checkInterval;
+		int tempNumChecks = numChecks;
+
+		// Step 1. The user vector in the visiting order and its suffix norms,
+		// slightly enlarged against rounding.
+		double[] tempUserVector = scorer.model.userSubspace[paraUser];
+		for (int k = 0; k < tempRank; k++) {
+			userFactors[k] = tempUserVector[dimensionOrder[k]];
+		} // Of for k
+		double tempSquared = 0;
+		for (int k = tempRank - 1; k >= tempInterval; k--) {
+			tempSquared += userFactors[k] * userFactors[k];
+			if (k % tempInterval == 0) {
+				userSuffixNorms[k / tempInterval - 1] = Math.sqrt(tempSquared) * (1 + 1e-9)
+						+ 1e-12;
+			} // Of if
+		} // Of for k
+
+		// Step 2. Score with checks.
+		int tempNumWords = (scorer.numItems + 63) >>> 6;
+		int tempNumScored = 0;
+		long tempNumMultiplyAdds = 0;
+		for (int w = 0; w < tempNumWords; w++) {
+			long tempBits = scorer.eligibleBits(paraExcluded, w);
+			while (tempBits != 0) {
+				int tempItem = (w << 6) + Long.numberOfTrailingZeros(tempBits);
+				tempBits &= tempBits - 1;
+				tempNumScored++;
+
+				int tempOffset = tempItem * tempRank;
+				int tempSuffixOffset = tempItem * tempNumChecks;
+				double tempScore = 0;
+				int tempBand = -1;
+				int k = 0;
+				for (int c = 0; c < tempNumChecks; c++) {
+					int tempEnd = k + tempInterval;
+					for (; k < tempEnd; k++) {
+						tempScore += userFactors[k] * orderedFactors[tempOffset + k];
+					} // Of for k
+
+					double tempBound = userSuffixNorms[c] * suffixNorms[tempSuffixOffset + c];
+					if (tempScore - tempBound >= paraRecommendThreshold) {
+						tempBand = 0;
+						break;
+					} else if (tempScore + tempBound < paraPromoteThreshold) {
+						tempBand = 2;
+						break;
+					} else if ((tempScore - tempBound >= paraPromoteThreshold)
+							&& (tempScore + tempBound < paraRecommendThreshold)) {
+						tempBand = 1;
+						break;
+					} // Of if
+				} // Of for c
+
+				if (tempBand < 0) {
+					for (; k < tempRank; k++) {
+						tempScore += userFactors[k] * orderedFactors[tempOffset + k];
+					} // Of for k
+					if (tempScore >= paraRecommendThreshold) {
+						tempBand = 0;
+					} else if (tempScore >= paraPromoteThreshold) {
+						tempBand = 1;
+					} // Of if
+				} // Of if
+				tempNumMultiplyAdds += k;
+
+				if (tempBand == 0) {
+					paraCollector.addRecommendation(tempItem);
+				} else if (tempBand == 1) {
+					paraCollector.addPromotion(tempItem);
+				} // Of if
+			} // Of while
+		} // Of for w
+
+		lastNumScored = tempNumScored;
+		lastNumMultiplyAdds = tempNumMultiplyAdds;
+	}// Of scoreIntoBands
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public long getLastNumMultiplyAdds() {
+		return lastNumMultiplyAdds;
+	}// Of getLastNumMultiplyAdds
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getLastNumScored() {
+		return lastNumScored;
+	}// Of getLastNumScored
+}// Of class EarlyExitItemScorer
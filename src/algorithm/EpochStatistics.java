@@ -0,0 +1,106 @@
+package algorithm;
+
+/**
+ * The statistics of one training epoch, see TrainingListener. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class EpochStatistics {
+	/**
+	 * The header of the CSV format, matching toCsvLine().
+	 */
+	public static final String CSV_HEADER = "round,totalRounds,threads,wallMillis,updates,"
+			+ "updatesPerSecond,trainingLoss,holdoutMae,holdoutRmse,userNorm,itemNorm";
+
+	/**
+	 * The index of the epoch in the current call of train(int).
+	 */
+	public int round;
+
+	/**
+	 * The number of epochs since the subspaces were initialized.
+	 */
+	public int totalRounds;
+
+	/**
+	 * The number of threads of ParallelTools.
+	 */
+	public int numThreads;
+
+	/**
+	 * The wall time of the update in nanoseconds, excluding monitoring.
+	 */
+	public long wallNanos;
+
+	/**
+	 * The number of ratings used for updating.
+	 */
+	public long numUpdates;
+
+	/**
+	 * The training loss (mean squared residual).
+	 */
+	public double trainingLoss;
+
+	/**
+	 * MAE on the holdout, NaN if there is no holdout.
+	 */
+	public double holdoutMae = Double.NaN;
+
+	/**
+	 * RMSE on the holdout, NaN if there is no holdout.
+	 */
+	public double holdoutRmse = Double.NaN;
+
+	/**
+	 * The Frobenius norm of the user subspace.
+	 */
+	public double userNorm;
+
+	/**
+	 * The Frobenius norm of the item subspace.
+	 */
+	public double itemNorm;
+
+	/**
+	 ***********************************
+	 * The number of updates per second.
+	 ***********************************
+	 */
+	public double getUpdatesPerSecond() {
+		if (wallNanos <= 0) {
+			return 0;
+		} // Of if
+		return numUpdates / (wallNanos / 1e9);
+	}// Of getUpdatesPerSecond
+
+	/**
+	 ***********************************
+	 * One line of the CSV format, without the line separator.
+	 ***********************************
+	 */
+	public String toCsvLine() {
+		return "" + round + "," + totalRounds + "," + numThreads + "," + (wallNanos / 1e6) + ","
+				+ numUpdates + "," + getUpdatesPerSecond() + "," + trainingLoss + ","
+				+ holdoutMae + "," + holdoutRmse + "," + userNorm + "," + itemNorm;
+	}// Of toCsvLine
+
+	/**
+	 ***********************************
+	 * Show me.
+	 ***********************************
+	 */
+	public String toString() {
+		return "Round " + round + ": " + (wallNanos / 1e6) + " ms, "
+				+ (long) getUpdatesPerSecond() + " updates/s, training loss = " + trainingLoss
+				+ ", holdout MAE = " + holdoutMae + ", holdout RMSE = " + holdoutRmse
+				+ ", norms = " + userNorm + ", " + itemNorm;
+	}// Of toString
+}// Of class EpochStatistics
@@ -0,0 +1,57 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * The result of one evaluation pass over the testing ratings. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class EvaluationResult {
+	/**
+	 * Mean absolute error.
+	 */
+	public double mae;
+
+	/**
+	 * Root mean squared error.
+	 */
+	public double rmse;
+
+	/**
+	 * The number of testing ratings.
+	 */
+	public int count;
+
+	/**
+	 * The width of each histogram bin.
+	 */
+	public double binWidth;
+
+	/**
+	 * The histogram of absolute errors. The last bin also holds all larger
+	 * errors. null if not required.
+	 */
+	public int[] errorHistogram;
+
+	/**
+	 ***********************************
+	 * Show me.
+	 ***********************************
+	 */
+	public String toString() {
+		String resultString = "MAE = " + mae + ", RMSE = " + rmse + ", count = " + count;
+		if (errorHistogram != null) {
+			resultString += ", histogram (bin width " + binWidth + ") = "
+					+ Arrays.toString(errorHistogram);
+		} // Of if
+		return resultString;
+	}// Of toString
+}// Of class EvaluationResult
@@ -0,0 +1,252 @@
+package algorithm;
+
+import java.util.Arrays;
+
+import datamodel.*;
+
+/**
+ * The state of the exact fold-in of one user along a conversation. It keeps
+ * the Cholesky factor L of the normal matrix (V^T V + l I) and the vector V^T
+ * r over the acquired items of the user. Each newly acquired rating changes
+ * the normal matrix by the rank-one term v v^T, so L is maintained by a
+ * rank-one update in O(k^2), and the user vector is obtained by two
+ * triangular solves, also in O(k^2). The factor is kept instead of the
+ * Sherman-Morrison update of the inverse, which loses precision quickly when
+ * the ridge is small. The ridge l is fixed for the session, otherwise a new
+ * rating would not be a rank-one change. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class FoldInSession {
+	/**
+	 * The model.
+	 */
+	MF2DBoolean model;
+
+	/**
+	 * The current user, -1 if there is no session.
+	 */
+	int user = -1;
+
+	/**
+	 * The ridge of the session.
+	 */
+	double ridge;
+
+	/**
+	 * The lower triangular Cholesky factor of the normal matrix.
+	 */
+	double[][] factor;
+
+	/**
+	 * V^T r.
+	 */
+	double[] moment;
+
+	/**
+	 * The work vector of the update and the solve.
+	 */
+	double[] scratch;
+
+	/**
+	 * Whether or not each rating position of the user is included.
+	 */
+	boolean[] included;
+
+	/**
+	 * The number of included ratings.
+	 */
+	int numIncluded;
+
+	/**
+	 * The number of rank-one updates since the construction.
+	 */
+	long numRankOneUpdates;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 ************************
+	 */
+	public FoldInSession(MF2DBoolean paraModel) {
+		model = paraModel;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Start a session for the user with no ratings.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraRidge
+	 *            The ridge, should be positive.
+	 ************************
+	 */
+	public void start(int paraUser, double paraRidge) {
+		int tempRank = model.rank;
+		if ((factor == null) || (factor.length != tempRank)) {
+			factor = new double[tempRank][tempRank];
+			moment = new double[tempRank];
+			scratch = new double[tempRank];
+		} // Of if
+		double tempDiagonal = Math.sqrt(paraRidge);
+		for (int i = 0; i < tempRank; i++) {
+			Arrays.fill(factor[i], 0);
+			factor[i][i] = tempDiagonal;
+		} // Of for i
+		Arrays.fill(moment, 0);
+
+		int tempNumRatings = model.dataset.getUserNumRatings(paraUser);
+		if ((included == null) || (included.length < tempNumRatings)) {
+			included = new boolean[tempNumRatings];
+		} else {
+			Arrays.fill(included, false);
+		} // Of if
+		numIncluded = 0;
+		user = paraUser;
+		ridge = paraRidge;
+	}// Of start
+
+	/**
+	 ************************
+	 * End the session, e.g., after the item subspace is changed.
+	 ************************
+	 */
+	public void reset() {
+		user = -1;
+	}// Of reset
+
+	/**
+	 ************************
+	 * Add one rating with a rank-one update of the factor, i.e., L' L'^T = L
+	 * L^T + v v^T.
+	 *
+	 * @param paraItem
+	 *            The item.
+	 * @param paraRating
+	 *            The rating.
+	 ************************
+	 */
+	void addRating(int paraItem, double paraRating) {
+		int tempRank = model.rank;
+		double[] tempItemVector = model.itemSubspace[paraItem];
+		System.arraycopy(tempItemVector, 0, scratch, 0, tempRank);
+
+		// A sequence of Givens rotations.
+		for (int i = 0; i < tempRank; i++) {
+			double tempDiagonal = factor[i][i];
+			double tempNewDiagonal = Math
+					.sqrt(tempDiagonal * tempDiagonal + scratch[i] * scratch[i]);
+			double tempCosine = tempNewDiagonal / tempDiagonal;
+			double tempSine = scratch[i] / tempDiagonal;
+			factor[i][i] = tempNewDiagonal;
+			for (int j = i + 1; j < tempRank; j++) {
+				factor[j][i] = (factor[j][i] + tempSine * scratch[j]) / tempCosine;
+				scratch[j] = tempCosine * scratch[j] - tempSine * factor[j][i];
+			} // Of for j
+			moment[i] += paraRating * tempItemVector[i];
+		} // Of for i
+		numRankOneUpdates++;
+	}// Of addRating
+
+	/**
+	 ************************
+	 * Bring the session up to date with the training ratings of the user, and
+	 * write the solution to the user subspace. A new session is started if
+	 * the user has changed, or a rating has left the training set.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraRidge
+	 *            The ridge for a new session.
+	 * @return The number of ratings added.
+	 ************************
+	 */
+	public int update(int paraUser, double paraRidge) {
+		RatingSystem2DBoolean tempDataset = model.dataset;
+		int tempNumRatings = tempDataset.getUserNumRatings(paraUser);
+		if (paraUser != user) {
+			start(paraUser, paraRidge);
+		} else {
+			for (int i = 0; i < tempNumRatings; i++) {
+				if (included[i] && !tempDataset.getTrainIndication(paraUser, i)) {
+					start(paraUser, paraRidge);
+					break;
+				} // Of if
+			} // Of for i
+		} // Of if
+
+		int resultNumAdded = 0;
+		Triple tempTriple;
+		for (int i = 0; i < tempNumRatings; i++) {
+			if (included[i] || !tempDataset.getTrainIndication(paraUser, i)) {
+				continue;
+			} // Of if
+			tempTriple = tempDataset.getTriple(paraUser, i);
+			addRating(tempTriple.item, tempTriple.rating);
+			included[i] = true;
+			numIncluded++;
+			resultNumAdded++;
+		} // Of for i
+
+		solve(model.userSubspace[paraUser]);
+		return resultNumAdded;
+	}// Of update
+
+	/**
+	 ************************
+	 * Solve L L^T u = V^T r.
+	 *
+	 * @param paraUserVector
+	 *            The user vector to store the result.
+	 ************************
+	 */
+	void solve(double[] paraUserVector) {
+		int tempRank = model.rank;
+		// L y = V^T r.
+		for (int i = 0; i < tempRank; i++) {
+			double tempSum = moment[i];
+			for (int j = 0; j < i; j++) {
+				tempSum -= factor[i][j] * scratch[j];
+			} // Of for j
+			scratch[i] = tempSum / factor[i][i];
+		} // Of for i
+
+		// L^T u = y.
+		for (int i = tempRank - 1; i >= 0; i--) {
+			double tempSum = scratch[i];
+			for (int j = i + 1; j < tempRank; j++) {
+				tempSum -= factor[j][i] * paraUserVector[j];
+			} // Of for j
+			paraUserVector[i] = tempSum / factor[i][i];
+		} // Of for i
+	}// Of solve
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getNumIncluded() {
+		return numIncluded;
+	}// Of getNumIncluded
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public long getNumRankOneUpdates() {
+		return numRankOneUpdates;
+	}// Of getNumRankOneUpdates
+}// Of class FoldInSession
@@ -0,0 +1,432 @@
+package algorithm;
+
+/**
+ * An exact index for threshold queries on inner products with the item
+ * vectors. The items are split recursively at the median of the dimension
+ * with the largest spread, and each node keeps the center and the radius of
+ * the ball containing its items. For a user vector u, the scores of the items
+ * of a node lie in [u c - |u| r, u c + |u| r]. A node is skipped as a whole if
+ * the upper bound is below the promotion threshold, and its items go to one
+ * band without scoring if both bounds fall in the same band. Only the other
+ * leaves are scored. After the item subspace is changed in place, the bounds
+ * are refit bottom-up while the partition is kept; a new subspace array
+ * causes a full rebuild. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ItemBallTree {
+	/**
+	 * The default maximal number of items in a leaf.
+	 */
+	public static final int DEFAULT_LEAF_SIZE = 32;
+
+	/**
+	 * The model.
+	 */
+	MF2DBoolean model;
+
+	/**
+	 * The maximal number of items in a leaf.
+	 */
+	int leafSize = DEFAULT_LEAF_SIZE;
+
+	/**
+	 * The number of items.
+	 */
+	int numItems;
+
+	/**
+	 * The rank.
+	 */
+	int rank;
+
+	/**
+	 * The items in the tree order. Each node covers a contiguous range.
+	 */
+	int[] order;
+
+	/**
+	 * The item vectors in the tree order.
+	 */
+	double[] orderedFactors;
+
+	/**
+	 * The number of nodes.
+	 */
+	int numNodes;
+
+	/**
+	 * The start position of each node in the tree order.
+	 */
+	int[] nodeStarts;
+
+	/**
+	 * The end position (exclusive) of each node in the tree order.
+	 */
+	int[] nodeEnds;
+
+	/**
+	 * The left child of each node, -1 for a leaf.
+	 */
+	int[] nodeLefts;
+
+	/**
+	 * The right child of each node, -1 for a leaf.
+	 */
+	int[] nodeRights;
+
+	/**
+	 * The centers of the nodes, node by node.
+	 */
+	double[] nodeCenters;
+
+	/**
+	 * The radius of each node.
+	 */
+	double[] nodeRadii;
+
+	/**
+	 * The node stack of queries.
+	 */
+	int[] stack;
+
+	/**
+	 * The item subspace on which the tree is built.
+	 */
+	double[][] indexedSubspace;
+
+	/**
+	 * The item factor version of the model for the bounds.
+	 */
+	int indexedVersion = -1;
+
+	/**
+	 * The number of items scored in the last query.
+	 */
+	int lastNumScored;
+
+	/**
+	 * The number of nodes visited in the last query.
+	 */
+	int lastNumVisited;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 ************************
+	 */
+	public ItemBallTree(MF2DBoolean paraModel) {
+		model = paraModel;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Setter. It takes effect from the next rebuild.
+	 ************************
+	 */
+	public void setLeafSize(int paraValue) {
+		leafSize = Math.max(1, paraValue);
+	}// Of setLeafSize
+
+	/**
+	 ************************
+	 * Rebuild or refit if the item subspace of the model has changed.
+	 ************************
+	 */
+	void refresh() {
+		if ((indexedSubspace != model.itemSubspace) || (rank != model.rank)) {
+			rebuild();
+		} else if (indexedVersion != model.itemFactorVersion) {
+			refit();
+		} // Of if
+	}// Of refresh
+
+	/**
+	 ************************
+	 * Build the tree from scratch.
+	 ************************
+	 */
+	public void rebuild() {
+		double[][] tempSubspace = model.itemSubspace;
+		numItems = tempSubspace.length;
+		rank = model.rank;
+
+		order = new int[numItems];
+		for (int i = 0; i < numItems; i++) {
+			order[i] = i;
+		} // Of for i
+
+		// Leaves have at least leafSize / 2 items, except a small root.
+		int tempMaxNodes = 2 * (numItems / Math.max(1, leafSize / 2) + 1);
+		nodeStarts = new int[tempMaxNodes];
+		nodeEnds = new int[tempMaxNodes];
+		nodeLefts = new int[tempMaxNodes];
+		nodeRights = new int[tempMaxNodes];
+		nodeRadii = new double[tempMaxNodes];
+		nodeCenters = new double[tempMaxNodes * rank];
+		stack = new int[tempMaxNodes];
+		numNodes = 0;
+		buildNode(tempSubspace, 0, numItems);
+
+		indexedSubspace = tempSubspace;
+		refit();
+	}// Of rebuild
+
+	/**
+	 ************************
+	 * Build a node on a range of the tree order, and its descendants.
+	 *
+	 * @return The index of the node.
+	 ************************
+	 */
+	int buildNode(double[][] paraSubspace, int paraStart, int paraEnd) {
+		int resultNode = numNodes++;
+		nodeStarts[resultNode] = paraStart;
+		nodeEnds[resultNode] = paraEnd;
+		nodeLefts[resultNode] = -1;
+		nodeRights[resultNode] = -1;
+		if (paraEnd - paraStart <= leafSize) {
+			return resultNode;
+		} // Of if
+
+		// The dimension with the largest spread.
+		int tempDimension = 0;
+		double tempLargestSpread = -1;
+		for (int k = 0; k < rank; k++) {
+			double tempMin = Double.MAX_VALUE;
+			double tempMax = -Double.MAX_VALUE;
+			for (int i = paraStart; i < paraEnd; i++) {
+				double tempValue = paraSubspace[order[i]][k];
+				tempMin = Math.min(tempMin, tempValue);
+				tempMax = Math.max(tempMax, tempValue);
+			} // Of for i
+			if (tempMax - tempMin > tempLargestSpread) {
+				tempLargestSpread = tempMax - tempMin;
+				tempDimension = k;
+			} // Of if
+		} // Of for k
+
+		int tempMiddle = (paraStart + paraEnd) >>> 1;
+		select(paraSubspace, tempDimension, paraStart, paraEnd - 1, tempMiddle);
+		nodeLefts[resultNode] = buildNode(paraSubspace, paraStart, tempMiddle);
+		nodeRights[resultNode] = buildNode(paraSubspace, tempMiddle, paraEnd);
+		return resultNode;
+	}// Of buildNode
+
+	/**
+	 ************************
+	 * Quick select on the tree order, so that the item at paraTarget has the
+	 * value of that rank on the dimension, with smaller ones before it.
+	 ************************
+	 */
+	void select(double[][] paraSubspace, int paraDimension, int paraLeft, int paraRight,
+			int paraTarget) {
+		int tempLeft = paraLeft;
+		int tempRight = paraRight;
+		while (tempLeft < tempRight) {
+			double tempPivot = paraSubspace[order[(tempLeft + tempRight) >>> 1]][paraDimension];
+			int i = tempLeft;
+			int j = tempRight;
+			while (i <= j) {
+				while (paraSubspace[order[i]][paraDimension] < tempPivot) {
+					i++;
+				} // Of while
+				while (paraSubspace[order[j]][paraDimension] > tempPivot) {
+					j--;
+				} // Of while
+				if (i <= j) {
+					int tempItem = order[i];
+					order[i] = order[j];
+					order[j] = tempItem;
+					i++;
+					j--;
+				} // Of if
+			} // Of while
+
+			if (paraTarget <= j) {
+				tempRight = j;
+			} else if (paraTarget >= i) {
+				tempLeft = i;
+			} else {
+				break;
+			} // Of if
+		} // Of while
+	}// Of select
+
+	/**
+	 ************************
+	 * Copy the item vectors in the tree order and recompute the bounds of all
+	 * nodes, keeping the partition.
+	 ************************
+	 */
+	public void refit() {
+		double[][] tempSubspace = model.itemSubspace;
+		if ((orderedFactors == null) || (orderedFactors.length != numItems * rank)) {
+			orderedFactors = new double[numItems * rank];
+		} // Of if
+		for (int i = 0; i < numItems; i++) {
+			System.arraycopy(tempSubspace[order[i]], 0, orderedFactors, i * rank, rank);
+		} // Of for i
+
+		// Children have larger indices than their parents.
+		for (int n = numNodes - 1; n >= 0; n--) {
+			int tempCenterOffset = n * rank;
+			int tempStart = nodeStarts[n];
+			int tempEnd = nodeEnds[n];
+			for (int k = 0; k < rank; k++) {
+				nodeCenters[tempCenterOffset + k] = 0;
+			} // Of for k
+			for (int i = tempStart; i < tempEnd; i++) {
+				for (int k = 0; k < rank; k++) {
+					nodeCenters[tempCenterOffset + k] += orderedFactors[i * rank + k];
+				} // Of for k
+			} // Of for i
+			for (int k = 0; k < rank; k++) {
+				nodeCenters[tempCenterOffset + k] /= Math.max(1, tempEnd - tempStart);
+			} // Of for k
+
+			double tempMaxSquared = 0;
+			for (int i = tempStart; i < tempEnd; i++) {
+				double tempSquared = 0;
+				for (int k = 0; k < rank; k++) {
+					double tempDifference = orderedFactors[i * rank + k]
+							- nodeCenters[tempCenterOffset + k];
+					tempSquared += tempDifference * tempDifference;
+				} // Of for k
+				tempMaxSquared = Math.max(tempMaxSquared, tempSquared);
+			} // Of for i
+			nodeRadii[n] = Math.sqrt(tempMaxSquared);
+		} // Of for n
+
+		indexedVersion = model.itemFactorVersion;
+	}// Of refit
+
+	/**
+	 ************************
+	 * Put the eligible items of the user into the bands, as
+	 * ItemScorer.scoreIntoBands(), while pruning subtrees. The candidates are
+	 * in the tree order instead of the item order.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraRecommendThreshold
+	 *            The threshold of the recommendation band.
+	 * @param paraPromoteThreshold
+	 *            The threshold of the promotion band.
+	 * @param paraCollector
+	 *            Receives the items of the bands.
+	 ************************
+	 */
+	public void scoreIntoBands(int paraUser, long[] paraExcluded, double paraRecommendThreshold,
+			double paraPromoteThreshold, BandCollector paraCollector) {
+		refresh();
+		double[] tempUserVector = model.userSubspace[paraUser];
+		double tempUserNorm = 0;
+		for (int k = 0; k < rank; k++) {
+			tempUserNorm += tempUserVector[k] * tempUserVector[k];
+		} // Of for k
+		tempUserNorm = Math.sqrt(tempUserNorm);
+
+		int tempNumScored = 0;
+		int tempNumVisited = 0;
+		int tempTop = 0;
+		stack[tempTop++] = 0;
+		while (tempTop > 0) {
+			int tempNode = stack[--tempTop];
+			tempNumVisited++;
+
+			// Step 1. Bounds of the scores in the node.
+			int tempCenterOffset = tempNode * rank;
+			double tempCenterScore = 0;
+			for (int k = 0; k < rank; k++) {
+				tempCenterScore += tempUserVector[k] * nodeCenters[tempCenterOffset + k];
+			} // Of for k
+			double tempSlack = tempUserNorm * nodeRadii[tempNode];
+			double tempUpper = tempCenterScore + tempSlack;
+			double tempLower = tempCenterScore - tempSlack;
+			if (tempUpper < paraPromoteThreshold) {
+				continue;
+			} // Of if
+
+			// Step 2. The whole node falls in one band.
+			int tempStart = nodeStarts[tempNode];
+			int tempEnd = nodeEnds[tempNode];
+			boolean tempAllRecommend = (tempLower >= paraRecommendThreshold);
+			boolean tempAllPromote = (tempLower >= paraPromoteThreshold)
+					&& (tempUpper < paraRecommendThreshold);
+			if (tempAllRecommend || tempAllPromote) {
+				for (int i = tempStart; i < tempEnd; i++) {
+					int tempItem = order[i];
+					if ((paraExcluded != null) && ItemScorer.containsItem(paraExcluded, tempItem)) {
+						continue;
+					} // Of if
+					if (tempAllRecommend) {
+						paraCollector.addRecommendation(tempItem);
+					} else {
+						paraCollector.addPromotion(tempItem);
+					} // Of if
+				} // Of for i
+				continue;
+			} // Of if
+
+			// Step 3. Descend, or score the items of a leaf.
+			if (nodeLefts[tempNode] >= 0) {
+				stack[tempTop++] = nodeRights[tempNode];
+				stack[tempTop++] = nodeLefts[tempNode];
+				continue;
+			} // Of if
+
+			for (int i = tempStart; i < tempEnd; i++) {
+				int tempItem = order[i];
+				if ((paraExcluded != null) && ItemScorer.containsItem(paraExcluded, tempItem)) {
+					continue;
+				} // Of if
+				int tempOffset = i * rank;
+				double tempScore = 0;
+				for (int k = 0; k < rank; k++) {
+					tempScore += tempUserVector[k] * orderedFactors[tempOffset + k];
+				} // Of for k
+				tempNumScored++;
+
+				if (tempScore >= paraRecommendThreshold) {
+					paraCollector.addRecommendation(tempItem);
+				} else if (tempScore >= paraPromoteThreshold) {
+					paraCollector.addPromotion(tempItem);
+				} // Of if
+			} // Of for i
+		} // Of while
+
+		lastNumScored = tempNumScored;
+		lastNumVisited = tempNumVisited;
+	}// Of scoreIntoBands
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getLastNumScored() {
+		return lastNumScored;
+	}// Of getLastNumScored
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getLastNumVisited() {
+		return lastNumVisited;
+	}// Of getLastNumVisited
+}// Of class ItemBallTree
@@ -0,0 +1,191 @@
+package algorithm;
+
+import Jama.*;
+import common.ParallelTools;
+import datamodel.*;
+
+/**
+ * Exact truncated SVD of the training rating matrix A for narrow catalogues
+ * such as Jester, where unknown ratings are regarded as 0. The item Gram
+ * matrix A^T A is only numItems x numItems. It is accumulated in one parallel
+ * pass over the users, with one packed upper triangle for each of the
+ * GRAM_NUM_CHUNKS chunks merged in chunk order, so that the result does not
+ * depend on the number of threads. It is then decomposed
+ * exactly. Its leading eigenvectors are the right singular vectors of A, and
+ * the user vectors are obtained by projecting each row of A on them, also in
+ * parallel. <br>
+ * It only provides a better starting point. MF2DBoolean.train() still runs
+ * trainRounds rounds, hence callers should lower trainRounds, or enable early
+ * stopping, to save SGD rounds. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ItemGramEigen {
+	/**
+	 * The default maximal number of items for the exact decomposition.
+	 */
+	public static final int DEFAULT_MAX_ITEMS = 500;
+
+	/**
+	 * Singular values below this are regarded as 0 in the projection.
+	 */
+	public static final double SINGULAR_VALUE_EPSILON = 1e-10;
+
+	/**
+	 * The number of partial Gram matrices. It is fixed so that the result
+	 * does not depend on the number of threads, and small since each partial
+	 * matrix takes numItems^2 / 2 doubles.
+	 */
+	public static final int GRAM_NUM_CHUNKS = 8;
+
+	/**
+	 ************************
+	 * Accumulate A^T A over the training ratings.
+	 *
+	 * @param paraDataset
+	 *            The dataset.
+	 * @return The Gram matrix.
+	 ************************
+	 */
+	public static double[][] computeItemGram(final RatingSystem2DBoolean paraDataset) {
+		final int tempNumItems = paraDataset.getNumItems();
+		final int tempNumChunks = GRAM_NUM_CHUNKS;
+		final double[][] tempPartialGrams = new double[tempNumChunks][];
+
+		// The start of each row in the packed upper triangle.
+		final int[] tempRowStarts = new int[tempNumItems];
+		for (int i = 1; i < tempNumItems; i++) {
+			tempRowStarts[i] = tempRowStarts[i - 1] + tempNumItems - i + 1;
+		} // Of for i
+		final int tempPackedLength = tempNumItems * (tempNumItems + 1) / 2;
+
+		ParallelTools.parallelFor(paraDataset.getNumUsers(), tempNumChunks,
+				new ParallelTools.RangeTask() {
+					public void run(int paraChunk, int paraStart, int paraEnd) {
+						double[] tempGram = new double[tempPackedLength];
+						boolean[] tempRated = new boolean[tempNumItems];
+						double[] tempDenseRatings = new double[tempNumItems];
+						int[] tempItems = new int[tempNumItems];
+						double[] tempRatings = new double[tempNumItems];
+						for (int i = paraStart; i < paraEnd; i++) {
+							// The training ratings of the user, sorted by item.
+							for (int j = 0; j < paraDataset.getUserNumRatings(i); j++) {
+								if (paraDataset.getTrainIndication(i, j)) {
+									Triple tempTriple = paraDataset.getTriple(i, j);
+									tempRated[tempTriple.item] = true;
+									tempDenseRatings[tempTriple.item] = tempTriple.rating;
+								} // Of if
+							} // Of for j
+							int tempLength = 0;
+							for (int j = 0; j < tempNumItems; j++) {
+								if (tempRated[j]) {
+									tempRated[j] = false;
+									tempItems[tempLength] = j;
+									tempRatings[tempLength] = tempDenseRatings[j];
+									tempLength++;
+								} // Of if
+							} // Of for j
+
+							// The upper triangle of the outer product.
+							for (int j = 0; j < tempLength; j++) {
+								int tempOffset = tempRowStarts[tempItems[j]] - tempItems[j];
+								double tempValue = tempRatings[j];
+								for (int k = j; k < tempLength; k++) {
+									tempGram[tempOffset + tempItems[k]] += tempValue
+											* tempRatings[k];
+								} // Of for k
+							} // Of for j
+						} // Of for i
+						tempPartialGrams[paraChunk] = tempGram;
+					}// Of run
+				});
+
+		// Merge in chunk order and symmetrize.
+		double[][] resultGram = new double[tempNumItems][tempNumItems];
+		for (int c = 0; c < tempNumChunks; c++) {
+			double[] tempGram = tempPartialGrams[c];
+			for (int i = 0; i < tempNumItems; i++) {
+				int tempOffset = tempRowStarts[i] - i;
+				for (int j = i; j < tempNumItems; j++) {
+					resultGram[i][j] += tempGram[tempOffset + j];
+				} // Of for j
+			} // Of for i
+			tempPartialGrams[c] = null;
+		} // Of for c
+		for (int i = 0; i < tempNumItems; i++) {
+			for (int j = i + 1; j < tempNumItems; j++) {
+				resultGram[j][i] = resultGram[i][j];
+			} // Of for j
+		} // Of for i
+
+		return resultGram;
+	}// Of computeItemGram
+
+	/**
+	 ************************
+	 * Initialize the subspaces of a model with the leading singular vectors,
+	 * each scaled by the square root of the singular value, as
+	 * RandomizedSVD.
+	 *
+	 * @param paraModel
+	 *            The model, its rank is employed.
+	 ************************
+	 */
+	public static void initialize(final MF2DBoolean paraModel) {
+		final RatingSystem2DBoolean tempDataset = paraModel.dataset;
+		int tempNumItems = tempDataset.getNumItems();
+		final int tempRank = paraModel.rank;
+		final int tempUsedRank = Math.min(tempRank, tempNumItems);
+
+		// Step 1. Eigen decomposition of the Gram matrix. The eigenvalues of a
+		// symmetric matrix are in ascending order.
+		EigenvalueDecomposition tempDecomposition = new Matrix(computeItemGram(tempDataset))
+				.eig();
+		double[] tempEigenvalues = tempDecomposition.getRealEigenvalues();
+		double[][] tempEigenvectors = tempDecomposition.getV().getArray();
+
+		// Step 2. Item vectors V_k S^{1/2}, and the projection V_k S^{-1/2}.
+		final double[][] tempProjection = new double[tempNumItems][tempRank];
+		paraModel.itemSubspace = new double[tempNumItems][tempRank];
+		for (int j = 0; j < tempUsedRank; j++) {
+			int tempColumn = tempNumItems - 1 - j;
+			double tempSingularValue = Math.sqrt(Math.max(tempEigenvalues[tempColumn], 0));
+			if (tempSingularValue < SINGULAR_VALUE_EPSILON) {
+				continue;
+			} // Of if
+			double tempScale = Math.sqrt(tempSingularValue);
+			for (int i = 0; i < tempNumItems; i++) {
+				paraModel.itemSubspace[i][j] = tempEigenvectors[i][tempColumn] * tempScale;
+				tempProjection[i][j] = tempEigenvectors[i][tempColumn] / tempScale;
+			} // Of for i
+		} // Of for j
+
+		// Step 3. User vectors A_i V_k S^{-1/2} = U_k S^{1/2}.
+		paraModel.userSubspace = new double[tempDataset.getNumUsers()][tempRank];
+		ParallelTools.parallelFor(tempDataset.getNumUsers(), ParallelTools.DEFAULT_NUM_CHUNKS,
+				new ParallelTools.RangeTask() {
+					public void run(int paraChunk, int paraStart, int paraEnd) {
+						for (int i = paraStart; i < paraEnd; i++) {
+							double[] tempUserVector = paraModel.userSubspace[i];
+							for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+								if (!tempDataset.getTrainIndication(i, j)) {
+									continue;
+								} // Of if
+								Triple tempTriple = tempDataset.getTriple(i, j);
+								double[] tempRow = tempProjection[tempTriple.item];
+								for (int k = 0; k < tempUsedRank; k++) {
+									tempUserVector[k] += tempTriple.rating * tempRow[k];
+								} // Of for k
+							} // Of for j
+						} // Of for i
+					}// Of run
+				});
+	}// Of initialize
+}// Of class ItemGramEigen
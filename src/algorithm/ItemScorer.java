@@ -0,0 +1,394 @@
+package algorithm;
+
+/**
+ * Score the items for a user with the linear model of MF2DBoolean, skipping
+ * excluded items such as those already recommended or promoted. The item
+ * subspace is packed into one flat array, so that the items are visited in
+ * contiguous blocks of 64, one word of the exclusion bitset each, and a
+ * fully excluded block is skipped at once. The packed copy is rebuilt when
+ * the item subspace of the model has changed. Thresholding into
+ * recommendation and promotion candidates is fused into the scoring loop.
+ * For large catalogues, the band query may be answered by an ItemBallTree
+ * instead, which skips whole groups of items, by QuantizedItemFactors, which
+ * scans 8-bit vectors, or by EarlyExitItemScorer, which stops the inner
+ * product once the band is decided. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ItemScorer {
+	/**
+	 * The model.
+	 */
+	MF2DBoolean model;
+
+	/**
+	 * The item subspace, item by item.
+	 */
+	double[] packedFactors;
+
+	/**
+	 * The item subspace from which the packed copy is built.
+	 */
+	double[][] packedSubspace;
+
+	/**
+	 * The item factor version of the model for the packed copy.
+	 */
+	int packedVersion = -1;
+
+	/**
+	 * The rank of the packed copy.
+	 */
+	int packedRank;
+
+	/**
+	 * The number of items.
+	 */
+	int numItems;
+
+	/**
+	 * The number of times the packed copy has been built.
+	 */
+	int packCount;
+
+	/**
+	 * The index for band queries, null if not employed.
+	 */
+	ItemBallTree ballTree;
+
+	/**
+	 * The quantized vectors for band queries, null if not employed.
+	 */
+	QuantizedItemFactors quantizedFactors;
+
+	/**
+	 * The early exit scorer for band queries, null if not employed.
+	 */
+	EarlyExitItemScorer earlyExitScorer;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 ************************
+	 */
+	public ItemScorer(MF2DBoolean paraModel) {
+		model = paraModel;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Employ a ball tree for band queries or not. The tree is built on the
+	 * first query.
+	 *
+	 * @param paraValue
+	 *            Use the tree or not.
+	 ************************
+	 */
+	public void setUseBallTree(boolean paraValue) {
+		if (!paraValue) {
+			ballTree = null;
+		} else if (ballTree == null) {
+			ballTree = new ItemBallTree(model);
+		} // Of if
+	}// Of setUseBallTree
+
+	/**
+	 ************************
+	 * Getter.
+	 *
+	 * @return The ball tree, null if not employed.
+	 ************************
+	 */
+	public ItemBallTree getBallTree() {
+		return ballTree;
+	}// Of getBallTree
+
+	/**
+	 ************************
+	 * Employ quantized vectors for band queries or not. It is ignored if the
+	 * ball tree is employed.
+	 *
+	 * @param paraValue
+	 *            Use quantized vectors or not.
+	 ************************
+	 */
+	public void setUseQuantization(boolean paraValue) {
+		if (!paraValue) {
+			quantizedFactors = null;
+		} else if (quantizedFactors == null) {
+			quantizedFactors = new QuantizedItemFactors(this);
+		} // Of if
+	}// Of setUseQuantization
+
+	/**
+	 ************************
+	 * Getter.
+	 *
+	 * @return The quantized vectors, null if not employed.
+	 ************************
+	 */
+	public QuantizedItemFactors getQuantizedFactors() {
+		return quantizedFactors;
+	}// Of getQuantizedFactors
+
+	/**
+	 ************************
+	 * Employ early exit for band queries or not. It is ignored if the ball
+	 * tree or quantized vectors are employed.
+	 *
+	 * @param paraValue
+	 *            Use early exit or not.
+	 ************************
+	 */
+	public void setUseEarlyExit(boolean paraValue) {
+		if (!paraValue) {
+			earlyExitScorer = null;
+		} else if (earlyExitScorer == null) {
+			earlyExitScorer = new EarlyExitItemScorer(this);
+		} // Of if
+	}// Of setUseEarlyExit
+
+	/**
+	 ************************
+	 * Getter.
+	 *
+	 * @return The early exit scorer, null if not employed.
+	 ************************
+	 */
+	public EarlyExitItemScorer getEarlyExitScorer() {
+		return earlyExitScorer;
+	}// Of getEarlyExitScorer
+
+	/**
+	 ************************
+	 * Create an empty exclusion bitset.
+	 *
+	 * @param paraNumItems
+	 *            The number of items.
+	 * @return The bitset, one bit for each item.
+	 ************************
+	 */
+	public static long[] newItemSet(int paraNumItems) {
+		return new long[(paraNumItems + 63) >>> 6];
+	}// Of newItemSet
+
+	/**
+	 ************************
+	 * Add an item to a bitset.
+	 ************************
+	 */
+	public static void addItem(long[] paraSet, int paraItem) {
+		paraSet[paraItem >>> 6] |= 1L << paraItem;
+	}// Of addItem
+
+	/**
+	 ************************
+	 * Is the item in the bitset?
+	 ************************
+	 */
+	public static boolean containsItem(long[] paraSet, int paraItem) {
+		return (paraSet[paraItem >>> 6] & (1L << paraItem)) != 0;
+	}// Of containsItem
+
+	/**
+	 ************************
+	 * Rebuild the packed copy if the item subspace has changed.
+	 ************************
+	 */
+	void refresh() {
+		double[][] tempSubspace = model.itemSubspace;
+		int tempRank = model.rank;
+		if ((packedSubspace == tempSubspace) && (packedVersion == model.itemFactorVersion)
+				&& (packedRank == tempRank)) {
+			return;
+		} // Of if
+
+		numItems = tempSubspace.length;
+		if ((packedFactors == null) || (packedFactors.length != numItems * tempRank)) {
+			packedFactors = new double[numItems * tempRank];
+		} // Of if
+		for (int i = 0; i < numItems; i++) {
+			System.arraycopy(tempSubspace[i], 0, packedFactors, i * tempRank, tempRank);
+		} // Of for i
+
+		packedSubspace = tempSubspace;
+		packedVersion = model.itemFactorVersion;
+		packedRank = tempRank;
+		packCount++;
+	}// Of refresh
+
+	/**
+	 ************************
+	 * The eligible items of a block, i.e., a word of the bitset.
+	 *
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraWord
+	 *            The index of the word.
+	 * @return The eligible items of the block as bits.
+	 ************************
+	 */
+	long eligibleBits(long[] paraExcluded, int paraWord) {
+		long resultBits = (paraExcluded == null) ? -1L : ~paraExcluded[paraWord];
+		int tempRemaining = numItems - (paraWord << 6);
+		if (tempRemaining < 64) {
+			resultBits &= (1L << tempRemaining) - 1;
+		} // Of if
+		return resultBits;
+	}// Of eligibleBits
+
+	/**
+	 ************************
+	 * Score the eligible items for the user.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraScores
+	 *            The buffer, at least numItems long. Excluded items are left
+	 *            unchanged.
+	 * @return The number of scored items.
+	 ************************
+	 */
+	public int score(int paraUser, long[] paraExcluded, double[] paraScores) {
+		refresh();
+		double[] tempFactors = packedFactors;
+		double[] tempUserVector = model.userSubspace[paraUser];
+		int tempRank = packedRank;
+		int tempNumWords = (numItems + 63) >>> 6;
+
+		int resultNumScored = 0;
+		for (int w = 0; w < tempNumWords; w++) {
+			long tempBits = eligibleBits(paraExcluded, w);
+			while (tempBits != 0) {
+				int tempItem = (w << 6) + Long.numberOfTrailingZeros(tempBits);
+				tempBits &= tempBits - 1;
+
+				int tempOffset = tempItem * tempRank;
+				double tempScore = 0;
+				for (int k = 0; k < tempRank; k++) {
+					tempScore += tempUserVector[k] * tempFactors[tempOffset + k];
+				} // Of for k
+				paraScores[tempItem] = tempScore;
+				resultNumScored++;
+			} // Of while
+		} // Of for w
+
+		return resultNumScored;
+	}// Of score
+
+	/**
+	 ************************
+	 * Score the eligible items for the user and put them into the bands. An
+	 * item is a recommendation candidate if its score is no less than the
+	 * recommendation threshold, otherwise a promotion candidate if its score
+	 * is no less than the promotion threshold. The items are passed to
+	 * the collector in the ascending order, or in the tree order if the ball tree is
+	 * employed.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraRecommendThreshold
+	 *            The threshold of the recommendation band.
+	 * @param paraPromoteThreshold
+	 *            The threshold of the promotion band.
+	 * @param paraCollector
+	 *            Receives the items of the bands.
+	 ************************
+	 */
+	public void scoreIntoBands(int paraUser, long[] paraExcluded, double paraRecommendThreshold,
+			double paraPromoteThreshold, BandCollector paraCollector) {
+		if (ballTree != null) {
+			ballTree.scoreIntoBands(paraUser, paraExcluded, paraRecommendThreshold,
+					paraPromoteThreshold, paraCollector);
+			return;
+		} // Of if
+		if (quantizedFactors != null) {
+			quantizedFactors.scoreIntoBands(paraUser, paraExcluded, paraRecommendThreshold,
+					paraPromoteThreshold, paraCollector);
+			return;
+		} // Of if
+		if (earlyExitScorer != null) {
+			earlyExitScorer.scoreIntoBands(paraUser, paraExcluded, paraRecommendThreshold,
+					paraPromoteThreshold, paraCollector);
+			return;
+		} // Of if
+
+		refresh();
+		double[] tempFactors = packedFactors;
+		double[] tempUserVector = model.userSubspace[paraUser];
+		int tempRank = packedRank;
+		int tempNumWords = (numItems + 63) >>> 6;
+
+		for (int w = 0; w < tempNumWords; w++) {
+			long tempBits = eligibleBits(paraExcluded, w);
+			while (tempBits != 0) {
+				int tempItem = (w << 6) + Long.numberOfTrailingZeros(tempBits);
+				tempBits &= tempBits - 1;
+
+				int tempOffset = tempItem * tempRank;
+				double tempScore = 0;
+				for (int k = 0; k < tempRank; k++) {
+					tempScore += tempUserVector[k] * tempFactors[tempOffset + k];
+				} // Of for k
+
+				if (tempScore >= paraRecommendThreshold) {
+					paraCollector.addRecommendation(tempItem);
+				} else if (tempScore >= paraPromoteThreshold) {
+					paraCollector.addPromotion(tempItem);
+				} // Of if
+			} // Of while
+		} // Of for w
+	}// Of scoreIntoBands
+
+	/**
+	 ************************
+	 * Score the eligible items for the user and keep the best ones of the
+	 * bands in the heaps of the collector. The plain kernel is always
+	 * employed, since the other band queries do not provide exact scores.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraCollector
+	 *            The collector, already reset with the thresholds.
+	 ************************
+	 */
+	public void scoreIntoRanks(int paraUser, long[] paraExcluded,
+			RankedBandCollector paraCollector) {
+		refresh();
+		double[] tempFactors = packedFactors;
+		double[] tempUserVector = model.userSubspace[paraUser];
+		int tempRank = packedRank;
+		int tempNumWords = (numItems + 63) >>> 6;
+
+		for (int w = 0; w < tempNumWords; w++) {
+			long tempBits = eligibleBits(paraExcluded, w);
+			while (tempBits != 0) {
+				int tempItem = (w << 6) + Long.numberOfTrailingZeros(tempBits);
+				tempBits &= tempBits - 1;
+
+				int tempOffset = tempItem * tempRank;
+				double tempScore = 0;
+				for (int k = 0; k < tempRank; k++) {
+					tempScore += tempUserVector[k] * tempFactors[tempOffset + k];
+				} // Of for k
+				paraCollector.add(tempItem, tempScore);
+			} // Of while
+		} // Of for w
+	}// Of scoreIntoRanks
+}// Of class ItemScorer
@@ -1,8 +1,10 @@
 package algorithm;
 
 import java.io.*;
+import java.util.*;
 
 import common.Common;
+import common.ParallelTools;
 import datamodel.*;
 
 /**
@@ -50,6 +52,22 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 */
 	int regularScheme;
 
+	/**
+	 * Increased whenever the item subspace may have been changed in place.
+	 */
+	int itemFactorVersion;
+
+	/**
+	 * Increased whenever some user vectors may have been changed outside of
+	 * update(), e.g., by a fold-in.
+	 */
+	int userFactorVersion;
+
+	/**
+	 * The scorer of items, created on demand.
+	 */
+	ItemScorer itemScorer;
+
 	/**
 	 * The range for the initial value of subspace values.
 	 */
@@ -65,11 +83,185 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 */
 	public static final int PQ_REGULAR = 1;
 
+	/**
+	 * PQ regular scheme with AdaGrad per-parameter learning rates. alpha
+	 * serves as the base learning rate, and should be much larger than that
+	 * of plain SGD, e.g., 0.01.
+	 */
+	public static final int ADAGRAD_REGULAR = 2;
+
+	/**
+	 * PQ regular scheme with Adam per-parameter learning rates. alpha serves
+	 * as the base learning rate.
+	 */
+	public static final int ADAM_REGULAR = 3;
+
+	/**
+	 * Uniform random initial values in [-range, +range].
+	 */
+	public static final int RANDOM_INITIALIZATION = 0;
+
+	/**
+	 * Initial values from the randomized truncated SVD of the training
+	 * ratings.
+	 */
+	public static final int SVD_INITIALIZATION = 1;
+
+	/**
+	 * Initial values from the exact eigen decomposition of the item Gram
+	 * matrix if there are at most eigenMaxItems items, otherwise the same as
+	 * SVD_INITIALIZATION. Like SVD_INITIALIZATION, it does not reduce the
+	 * number of rounds of train() by itself.
+	 */
+	public static final int EIGEN_INITIALIZATION = 2;
+
+	/**
+	 * How to initialize the subspaces.
+	 */
+	int initializationScheme = RANDOM_INITIALIZATION;
+
+	/**
+	 * The maximal number of items for EIGEN_INITIALIZATION.
+	 */
+	int eigenMaxItems = ItemGramEigen.DEFAULT_MAX_ITEMS;
+
+	/**
+	 * The decay rate of the first moment for Adam.
+	 */
+	double adamBeta1 = 0.9;
+
+	/**
+	 * The decay rate of the second moment for Adam.
+	 */
+	double adamBeta2 = 0.999;
+
+	/**
+	 * Avoid dividing by zero in adaptive schemes.
+	 */
+	public static final double ADAPTIVE_EPSILON = 1e-8;
+
+	/**
+	 * The first moments of the user subspace for Adam, stored row by row in
+	 * the same order as userSubspace.
+	 */
+	double[] userFirstMoments;
+
+	/**
+	 * The second moments (squared gradient sums for AdaGrad) of the user
+	 * subspace.
+	 */
+	double[] userSecondMoments;
+
+	/**
+	 * The first moments of the item subspace for Adam.
+	 */
+	double[] itemFirstMoments;
+
+	/**
+	 * The second moments (squared gradient sums for AdaGrad) of the item
+	 * subspace.
+	 */
+	double[] itemSecondMoments;
+
+	/**
+	 * How many times each user vector has been updated. For bias correction
+	 * of Adam.
+	 */
+	int[] userUpdateCounts;
+
+	/**
+	 * How many times each item vector has been updated.
+	 */
+	int[] itemUpdateCounts;
+
 	/**
 	 * How many rounds for training.
 	 */
 	int trainRounds = 200;
 
+	/**
+	 * The relative improvement of the monitored loss below which an epoch is
+	 * regarded as stalled. Non-positive values disable early stopping.
+	 */
+	double convergenceTolerance = 0;
+
+	/**
+	 * How many consecutive stalled epochs are allowed before training stops.
+	 */
+	int convergencePatience = 3;
+
+	/**
+	 * The maximal number of training ratings held out for monitoring. They are
+	 * excluded from the updates during train(int), so that the testing set is
+	 * never used for model selection. 0 means only the training loss is
+	 * monitored.
+	 */
+	int holdoutSize = 0;
+
+	/**
+	 * The users of the holdout ratings.
+	 */
+	int[] holdoutUsers;
+
+	/**
+	 * The indices of the holdout ratings, i.e., the jth rating of the user.
+	 */
+	int[] holdoutIndices;
+
+	/**
+	 * The training loss (mean squared residual) of the last epoch. It is
+	 * accumulated during the update, hence costs nothing extra.
+	 */
+	double trainingLoss;
+
+	/**
+	 * The number of ratings used for updating in the last epoch.
+	 */
+	int epochNumUpdates;
+
+	/**
+	 * How many rounds the current subspaces have been trained since
+	 * initialization, including those restored from a checkpoint.
+	 */
+	int totalTrainedRounds;
+
+	/**
+	 * How many rounds have been actually run in the last call of train(int).
+	 */
+	int actualTrainRounds;
+
+	/**
+	 * Why the last call of train(int) stopped.
+	 */
+	String stopReason = "";
+
+	/**
+	 * Whether or not the last call of train(int) stopped because the loss
+	 * stalled. Further rounds are then of little use.
+	 */
+	boolean converged;
+
+	/**
+	 * Shuffled, cache-blocked mini-batch epochs. null means the ratings are
+	 * visited in user order.
+	 */
+	ShuffledBlockScheduler epochScheduler;
+
+	/**
+	 * The CCD++ solver. null means SGD is employed.
+	 */
+	CCDSolver ccdSolver;
+
+	/**
+	 * Retrains the rows touched by new ratings, created on demand.
+	 */
+	DeltaRetrainer deltaRetrainer;
+
+	/**
+	 * The listeners receiving the statistics of each epoch.
+	 */
+	List<TrainingListener> trainingListeners = new ArrayList<TrainingListener>();
+
 	/**
 	 ************************ 
 	 * The second constructor.
@@ -107,6 +299,166 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 		trainRounds = paraTrainRounds;
 	}// Of setParameters
 
+	/**
+	 ************************ 
+	 * Set the early stopping policy.
+	 * 
+	 * @param paraTolerance
+	 *            The relative improvement below which an epoch is stalled.
+	 *            Non-positive values disable early stopping.
+	 * @param paraPatience
+	 *            How many consecutive stalled epochs are allowed.
+	 * @param paraHoldoutSize
+	 *            The number of training ratings held out for monitoring. 0
+	 *            for monitoring the training loss only.
+	 ************************ 
+	 */
+	public void setEarlyStopping(double paraTolerance, int paraPatience, int paraHoldoutSize) {
+		convergenceTolerance = paraTolerance;
+		convergencePatience = paraPatience;
+		holdoutSize = paraHoldoutSize;
+	}// Of setEarlyStopping
+
+	/**
+	 ************************ 
+	 * Set shuffled, cache-blocked mini-batch epochs.
+	 * 
+	 * @param paraCacheBytes
+	 *            The L2 cache size in bytes. Non-positive values restore the
+	 *            user-order epochs.
+	 * @param paraMiniBatchSize
+	 *            The number of ratings in a mini-batch.
+	 * @param paraSeed
+	 *            The seed for generating permutations.
+	 * @see ShuffledBlockScheduler
+	 ************************ 
+	 */
+	public void setShuffledBlockEpochs(int paraCacheBytes, int paraMiniBatchSize, long paraSeed) {
+		if (paraCacheBytes <= 0) {
+			epochScheduler = null;
+		} else {
+			epochScheduler = new ShuffledBlockScheduler(this, paraCacheBytes, paraMiniBatchSize,
+					paraSeed);
+		} // Of if
+	}// Of setShuffledBlockEpochs
+
+	/**
+	 ************************ 
+	 * Setter. With SVD_INITIALIZATION or EIGEN_INITIALIZATION, fewer rounds
+	 * are usually needed, however train() still runs trainRounds rounds unless
+	 * early stopping is enabled, see setEarlyStopping(). Lower trainRounds in
+	 * setParameters() accordingly.
+	 * 
+	 * @param paraInitializationScheme
+	 *            RANDOM_INITIALIZATION, SVD_INITIALIZATION or
+	 *            EIGEN_INITIALIZATION.
+	 ************************ 
+	 */
+	public void setInitializationScheme(int paraInitializationScheme) {
+		initializationScheme = paraInitializationScheme;
+	}// Of setInitializationScheme
+
+	/**
+	 ************************ 
+	 * Setter.
+	 * 
+	 * @param paraEigenMaxItems
+	 *            The maximal number of items for EIGEN_INITIALIZATION.
+	 ************************ 
+	 */
+	public void setEigenMaxItems(int paraEigenMaxItems) {
+		eigenMaxItems = paraEigenMaxItems;
+	}// Of setEigenMaxItems
+
+	/**
+	 ************************ 
+	 * Train with CCD++ instead of SGD. alpha is not used, and lambda is used
+	 * unless the regular scheme is NO_REGULAR.
+	 * 
+	 * @param paraInnerIterations
+	 *            The number of inner iterations for each dimension.
+	 *            Non-positive values restore SGD.
+	 * @see CCDSolver
+	 ************************ 
+	 */
+	public void setCCDSolver(int paraInnerIterations) {
+		if (paraInnerIterations <= 0) {
+			ccdSolver = null;
+		} else {
+			ccdSolver = new CCDSolver(this, paraInnerIterations);
+		} // Of if
+	}// Of setCCDSolver
+
+	/**
+	 ************************ 
+	 * Add a training listener. If the holdout size is positive, the holdout
+	 * is also evaluated for listeners without early stopping.
+	 * 
+	 * @param paraListener
+	 *            The listener.
+	 ************************ 
+	 */
+	public void addTrainingListener(TrainingListener paraListener) {
+		trainingListeners.add(paraListener);
+	}// Of addTrainingListener
+
+	/**
+	 ************************ 
+	 * Remove a training listener.
+	 * 
+	 * @param paraListener
+	 *            The listener.
+	 ************************ 
+	 */
+	public void removeTrainingListener(TrainingListener paraListener) {
+		trainingListeners.remove(paraListener);
+	}// Of removeTrainingListener
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public double getTrainingLoss() {
+		return trainingLoss;
+	}// Of getTrainingLoss
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public int getTotalTrainedRounds() {
+		return totalTrainedRounds;
+	}// Of getTotalTrainedRounds
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public int getActualTrainRounds() {
+		return actualTrainRounds;
+	}// Of getActualTrainRounds
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}// Of getStopReason
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public boolean isConverged() {
+		return converged;
+	}// Of isConverged
+
 	/**
 	 ************************ 
 	 * Get parameters.
@@ -144,13 +496,32 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 
 	/**
 	 ************************ 
-	 * Initialize subspaces. Each value is in [-paraRange, +paraRange].
+	 * Initialize subspaces. Each value is in [-paraRange, +paraRange]. With
+	 * SVD_INITIALIZATION or EIGEN_INITIALIZATION, the range is not used.
 	 * 
 	 * @paraRange The range of the initial values.
 	 ************************ 
 	 */
 	void initializeSubspaces(double paraRange) {
 		subspaceValueRange = paraRange;
+		if ((initializationScheme == EIGEN_INITIALIZATION)
+				&& (dataset.getNumItems() <= eigenMaxItems)) {
+			ItemGramEigen.initialize(this);
+			initializeOptimizerState();
+			totalTrainedRounds = 0;
+			converged = false;
+			return;
+		} // Of if
+
+		if (initializationScheme != RANDOM_INITIALIZATION) {
+			new RandomizedSVD(dataset).initialize(this, RandomizedSVD.DEFAULT_OVERSAMPLING,
+					RandomizedSVD.DEFAULT_POWER_ITERATIONS, Common.random.nextLong());
+			initializeOptimizerState();
+			totalTrainedRounds = 0;
+			converged = false;
+			return;
+		} // Of if
+
 		userSubspace = new double[dataset.getNumUsers()][rank];
 
 		for (int i = 0; i < dataset.getNumUsers(); i++) {
@@ -166,8 +537,49 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 				itemSubspace[i][j] = (Common.random.nextDouble() - 0.5) * 2 * subspaceValueRange;
 			} // Of for j
 		} // Of for i
+
+		initializeOptimizerState();
+		totalTrainedRounds = 0;
+		converged = false;
 	}// Of initializeSubspaces
 
+	/**
+	 ************************ 
+	 * Initialize the accumulators of adaptive schemes. They are flat arrays
+	 * with the same layout as the subspaces.
+	 ************************ 
+	 */
+	void initializeOptimizerState() {
+		userFirstMoments = new double[dataset.getNumUsers() * rank];
+		userSecondMoments = new double[dataset.getNumUsers() * rank];
+		itemFirstMoments = new double[dataset.getNumItems() * rank];
+		itemSecondMoments = new double[dataset.getNumItems() * rank];
+		userUpdateCounts = new int[dataset.getNumUsers()];
+		itemUpdateCounts = new int[dataset.getNumItems()];
+	}// Of initializeOptimizerState
+
+	/**
+	 ************************ 
+	 * Reset the accumulators of the given user, e.g., before incremental
+	 * training.
+	 * 
+	 * @param paraUser
+	 *            The given user.
+	 ************************ 
+	 */
+	void resetUserOptimizerState(int paraUser) {
+		if ((userSecondMoments == null) || (userSecondMoments.length != numUsers * rank)) {
+			initializeOptimizerState();
+			return;
+		} // Of if
+
+		for (int i = paraUser * rank; i < (paraUser + 1) * rank; i++) {
+			userFirstMoments[i] = 0;
+			userSecondMoments[i] = 0;
+		} // Of for i
+		userUpdateCounts[paraUser] = 0;
+	}// Of resetUserOptimizerState
+
 	/**
 	 ************************ 
 	 * Predict the rating of the user to the item
@@ -194,11 +606,58 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 */
 	public double[] predictForUser(int paraUser) {
 		// System.out.println("predictForUser(" + paraUser + ")");
-		double[] resultPredictions = new double[dataset.getNumItems()];
+		return predictForUser(paraUser, new double[dataset.getNumItems()]);
+	}// Of predictForUser
+
+	/**
+	 ************************ 
+	 * Tell the model that the item subspace has been changed in place outside
+	 * of update(), so that derived copies are rebuilt.
+	 ************************ 
+	 */
+	public void itemFactorsChanged() {
+		itemFactorVersion++;
+	}// Of itemFactorsChanged
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public ItemScorer getItemScorer() {
+		if (itemScorer == null) {
+			itemScorer = new ItemScorer(this);
+		} // Of if
+		return itemScorer;
+	}// Of getItemScorer
+
+	/**
+	 ************************ 
+	 * Are the predictions of predictForUser(int, double[]) the plain inner
+	 * products, so that ItemScorer may be employed instead? Subclasses
+	 * transforming the predictions should return false.
+	 ************************ 
+	 */
+	boolean linearScores() {
+		return true;
+	}// Of linearScores
+
+	/**
+	 ************************ 
+	 * Predict the ratings of the user to each item into a given buffer.
+	 * 
+	 * @param paraUser
+	 *            The user index.
+	 * @param paraPredictions
+	 *            The buffer, at least numItems long.
+	 * @return The buffer.
+	 ************************ 
+	 */
+	public double[] predictForUser(int paraUser, double[] paraPredictions) {
 		for (int i = 0; i < dataset.getNumItems(); i++) {
-			resultPredictions[i] = predict(paraUser, i);
+			paraPredictions[i] = predict(paraUser, i);
 		} // Of for i
-		return resultPredictions;
+		return paraPredictions;
 	}// Of predictForUser
 
 	/**
@@ -222,15 +681,263 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 ************************ 
 	 */
 	public void train(int paraRounds) {
+		// Hold out some training ratings for monitoring.
+		sampleHoldout();
+		try {
+			trainWithHoldout(paraRounds);
+		} finally {
+			restoreHoldout();
+		} // Of try
+	}// Of train
+
+	/**
+	 ************************ 
+	 * Train with the holdout, if any, already removed from the training set.
+	 * 
+	 * @param paraRounds
+	 *            The number of rounds.
+	 ************************ 
+	 */
+	void trainWithHoldout(int paraRounds) {
+		// Step 1. Prepare the epoch scheduler.
+		if (ccdSolver != null) {
+			ccdSolver.prepare();
+		} else if (epochScheduler != null) {
+			epochScheduler.prepare();
+		} // Of if
+
+		// Step 2. Train and monitor the loss.
+		double tempLoss;
+		double tempPreviousLoss = Double.MAX_VALUE;
+		int tempStalledRounds = 0;
+		long tempStartTime;
+		EvaluationResult tempHoldoutEvaluation;
+		stopReason = "The maximal number of rounds (" + paraRounds + ") is reached.";
+		actualTrainRounds = paraRounds;
+		converged = false;
 		for (int i = 0; i < paraRounds; i++) {
+			tempStartTime = System.nanoTime();
 			update();
+			totalTrainedRounds++;
 			if (i % 50 == 0) {
 				// Show the process
 				System.out.println("Round " + i);
 				// System.out.println("MAE: " + mae());
 			} // Of if
+
+			tempHoldoutEvaluation = null;
+			if (holdoutUsers != null) {
+				tempHoldoutEvaluation = evaluateHoldout();
+			} // Of if
+			if (!trainingListeners.isEmpty()) {
+				notifyTrainingListeners(i, System.nanoTime() - tempStartTime,
+						tempHoldoutEvaluation);
+			} // Of if
+
+			if (convergenceTolerance <= 0) {
+				continue;
+			} // Of if
+
+			if (tempHoldoutEvaluation == null) {
+				tempLoss = trainingLoss;
+			} else {
+				tempLoss = tempHoldoutEvaluation.rmse * tempHoldoutEvaluation.rmse;
+			} // Of if
+
+			if (Double.isNaN(tempLoss) || Double.isInfinite(tempLoss)) {
+				stopReason = "The loss diverges at round " + i + ".";
+				actualTrainRounds = i + 1;
+				break;
+			} // Of if
+
+			if ((tempPreviousLoss - tempLoss) < convergenceTolerance * tempPreviousLoss) {
+				tempStalledRounds++;
+			} else {
+				tempStalledRounds = 0;
+			} // Of if
+			tempPreviousLoss = tempLoss;
+
+			if (tempStalledRounds >= convergencePatience) {
+				stopReason = "The relative improvement is below " + convergenceTolerance + " for "
+						+ tempStalledRounds + " rounds, loss = " + tempLoss + ".";
+				actualTrainRounds = i + 1;
+				converged = true;
+				break;
+			} // Of if
 		} // Of for i
-	}// Of train
+
+		System.out.println("Training stopped after " + actualTrainRounds + " rounds. " + stopReason);
+	}// Of trainWithHoldout
+
+	/**
+	 ************************ 
+	 * Retrain only the rows touched by new ratings, i.e., ratings which have
+	 * been moved into the training set.
+	 * 
+	 * @param paraChangedUsers
+	 *            Users with new ratings, may be null.
+	 * @param paraChangedItems
+	 *            Items with new ratings, may be null.
+	 * @param paraMaxRounds
+	 *            The maximal number of rounds.
+	 * @param paraTolerance
+	 *            Stop if the relative improvement of the local loss is below
+	 *            it.
+	 * @return The number of rounds actually run.
+	 * @see DeltaRetrainer
+	 ************************ 
+	 */
+	public int retrainDelta(int[] paraChangedUsers, int[] paraChangedItems, int paraMaxRounds,
+			double paraTolerance) {
+		if (deltaRetrainer == null) {
+			deltaRetrainer = new DeltaRetrainer(this);
+		} // Of if
+		itemFactorVersion++;
+		return deltaRetrainer.retrain(paraChangedUsers, paraChangedItems, paraMaxRounds,
+				paraTolerance);
+	}// Of retrainDelta
+
+	/**
+	 ************************ 
+	 * Sample at most holdoutSize training ratings as the holdout, and remove
+	 * them from the training set until restoreHoldout() is called. Reservoir
+	 * sampling is employed so that only one scan is needed.
+	 ************************ 
+	 */
+	void sampleHoldout() {
+		holdoutUsers = null;
+		holdoutIndices = null;
+		if (((convergenceTolerance <= 0) && trainingListeners.isEmpty()) || (holdoutSize <= 0)) {
+			return;
+		} // Of if
+
+		int[] tempUsers = new int[holdoutSize];
+		int[] tempIndices = new int[holdoutSize];
+		int tempNumTraining = 0;
+		int tempPosition;
+		for (int i = 0; i < dataset.getNumUsers(); i++) {
+			for (int j = 0; j < dataset.getUserNumRatings(i); j++) {
+				if (!dataset.getTrainIndication(i, j)) {
+					continue;
+				} // Of if
+
+				if (tempNumTraining < holdoutSize) {
+					tempPosition = tempNumTraining;
+				} else {
+					tempPosition = Common.random.nextInt(tempNumTraining + 1);
+				} // Of if
+				if (tempPosition < holdoutSize) {
+					tempUsers[tempPosition] = i;
+					tempIndices[tempPosition] = j;
+				} // Of if
+				tempNumTraining++;
+			} // Of for j
+		} // Of for i
+
+		// Keep most of the training data for training, otherwise the training
+		// loss will be monitored.
+		if (tempNumTraining <= 2 * holdoutSize) {
+			return;
+		} // Of if
+
+		holdoutUsers = tempUsers;
+		holdoutIndices = tempIndices;
+		for (int i = 0; i < holdoutSize; i++) {
+			dataset.setTrainIndication(holdoutUsers[i], holdoutIndices[i], false);
+		} // Of for i
+	}// Of sampleHoldout
+
+	/**
+	 ************************ 
+	 * Return the holdout to the training set.
+	 ************************ 
+	 */
+	void restoreHoldout() {
+		if (holdoutUsers == null) {
+			return;
+		} // Of if
+
+		for (int i = 0; i < holdoutUsers.length; i++) {
+			dataset.setTrainIndication(holdoutUsers[i], holdoutIndices[i], true);
+		} // Of for i
+		holdoutUsers = null;
+		holdoutIndices = null;
+	}// Of restoreHoldout
+
+	/**
+	 ************************ 
+	 * Compute MAE and RMSE on the holdout. Predictions are not clamped so that
+	 * the RMSE matches the loss.
+	 * 
+	 * @return The evaluation.
+	 ************************ 
+	 */
+	EvaluationResult evaluateHoldout() {
+		double tempAbsoluteSum = 0;
+		double tempSquareSum = 0;
+		Triple tempTriple;
+		double tempError;
+		for (int i = 0; i < holdoutUsers.length; i++) {
+			tempTriple = dataset.getTriple(holdoutUsers[i], holdoutIndices[i]);
+			tempError = tempTriple.rating - predict(tempTriple.user, tempTriple.item);
+			tempAbsoluteSum += Math.abs(tempError);
+			tempSquareSum += tempError * tempError;
+		} // Of for i
+
+		EvaluationResult resultEvaluation = new EvaluationResult();
+		resultEvaluation.count = holdoutUsers.length;
+		resultEvaluation.mae = tempAbsoluteSum / holdoutUsers.length;
+		resultEvaluation.rmse = Math.sqrt(tempSquareSum / holdoutUsers.length);
+		return resultEvaluation;
+	}// Of evaluateHoldout
+
+	/**
+	 ************************ 
+	 * Send the statistics of an epoch to the listeners.
+	 * 
+	 * @param paraRound
+	 *            The round in the current call of train(int).
+	 * @param paraWallNanos
+	 *            The time of the update.
+	 * @param paraHoldoutEvaluation
+	 *            The evaluation on the holdout, null if none.
+	 ************************ 
+	 */
+	void notifyTrainingListeners(int paraRound, long paraWallNanos,
+			EvaluationResult paraHoldoutEvaluation) {
+		EpochStatistics tempStatistics = new EpochStatistics();
+		tempStatistics.round = paraRound;
+		tempStatistics.totalRounds = totalTrainedRounds;
+		tempStatistics.numThreads = ParallelTools.getNumThreads();
+		tempStatistics.wallNanos = paraWallNanos;
+		tempStatistics.numUpdates = epochNumUpdates;
+		tempStatistics.trainingLoss = trainingLoss;
+		if (paraHoldoutEvaluation != null) {
+			tempStatistics.holdoutMae = paraHoldoutEvaluation.mae;
+			tempStatistics.holdoutRmse = paraHoldoutEvaluation.rmse;
+		} // Of if
+		tempStatistics.userNorm = frobeniusNorm(userSubspace);
+		tempStatistics.itemNorm = frobeniusNorm(itemSubspace);
+
+		for (TrainingListener tempListener : trainingListeners) {
+			tempListener.epochFinished(tempStatistics);
+		} // Of for tempListener
+	}// Of notifyTrainingListeners
+
+	/**
+	 ************************ 
+	 * The Frobenius norm of a matrix.
+	 ************************ 
+	 */
+	static double frobeniusNorm(double[][] paraMatrix) {
+		double resultSum = 0;
+		for (int i = 0; i < paraMatrix.length; i++) {
+			for (int j = 0; j < paraMatrix[i].length; j++) {
+				resultSum += paraMatrix[i][j] * paraMatrix[i][j];
+			} // Of for j
+		} // Of for i
+		return Math.sqrt(resultSum);
+	}// Of frobeniusNorm
 
 	/**
 	 ************************ 
@@ -238,6 +945,19 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 ************************ 
 	 */
 	public void update() {
+		if (ccdSolver != null) {
+			// The solver increases the version itself.
+			ccdSolver.runEpoch();
+			return;
+		} // Of if
+
+		itemFactorVersion++;
+
+		if (epochScheduler != null) {
+			epochScheduler.runEpoch();
+			return;
+		} // Of if
+
 		switch (regularScheme) {
 		case NO_REGULAR:
 			updateNoRegular();
@@ -245,6 +965,10 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 		case PQ_REGULAR:
 			updatePQRegular();
 			break;
+		case ADAGRAD_REGULAR:
+		case ADAM_REGULAR:
+			updateAdaptive();
+			break;
 		default:
 			System.out.println("Unsupported regular scheme: " + regularScheme);
 			System.exit(0);
@@ -257,6 +981,8 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 ************************ 
 	 */
 	public void updateNoRegular() {
+		double tempLossSum = 0;
+		int tempNumUpdates = 0;
 		for (int i = 0; i < dataset.getNumUsers(); i++) {
 			for (int j = 0; j < dataset.getUserNumRatings(i); j++) {
 				// Ignore the testing set.
@@ -271,6 +997,8 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 
 				double tempResidual = tempRate - predict(tempUserId, tempItemId); // Residual
 				// tempResidual = Math.abs(tempResidual);
+				tempLossSum += tempResidual * tempResidual;
+				tempNumUpdates++;
 
 				// Update user subspace
 				double tempValue = 0;
@@ -287,6 +1015,9 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 				} // Of for k
 			} // Of for j
 		} // Of for i
+
+		epochNumUpdates = tempNumUpdates;
+		trainingLoss = tempLossSum / Math.max(tempNumUpdates, 1);
 	}// Of updateNoRegular
 
 	/**
@@ -295,6 +1026,8 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 ************************ 
 	 */
 	public void updatePQRegular() {
+		double tempLossSum = 0;
+		int tempNumUpdates = 0;
 		for (int i = 0; i < dataset.getNumUsers(); i++) {
 			for (int j = 0; j < dataset.getUserNumRatings(i); j++) {
 				// Ignore the testing set.
@@ -309,6 +1042,8 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 
 				double tempResidual = tempRate - predict(tempUserId, tempItemId); // Residual
 				// tempResidual = Math.abs(tempResidual);
+				tempLossSum += tempResidual * tempResidual;
+				tempNumUpdates++;
 
 				// Update user subspace
 				double tempValue = 0;
@@ -327,47 +1062,124 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 				} // Of for k
 			} // Of for j
 		} // Of for i
+
+		epochNumUpdates = tempNumUpdates;
+		trainingLoss = tempLossSum / Math.max(tempNumUpdates, 1);
 	}// Of updatePQRegular
 
 	/**
 	 ************************ 
-	 * Compute the RSME.
-	 * 
-	 * @return RSME of the current factorization.
+	 * Update sub-spaces using the training data with adaptive per-parameter
+	 * learning rates, i.e., AdaGrad or Adam. The gradients of the user and the
+	 * item are computed with the same residual and the old values.
 	 ************************ 
 	 */
-	public double rsme() {
-		double resultRsme = 0;
-		int tempTestCount = 0;
-
+	public void updateAdaptive() {
+		if ((userSecondMoments == null) || (userSecondMoments.length != numUsers * rank)) {
+			initializeOptimizerState();
+		} // Of if
+
+		boolean tempAdam = (regularScheme == ADAM_REGULAR);
+		double tempLossSum = 0;
+		int tempNumUpdates = 0;
+		double tempUserGradient, tempItemGradient;
+		double tempUserCorrection1 = 1, tempUserCorrection2 = 1;
+		double tempItemCorrection1 = 1, tempItemCorrection2 = 1;
 		for (int i = 0; i < dataset.getNumUsers(); i++) {
 			for (int j = 0; j < dataset.getUserNumRatings(i); j++) {
-				// Ignore the training set.
-				if (dataset.getTrainIndication(i, j)) {
+				// Ignore the testing set.
+				if (!dataset.getTrainIndication(i, j)) {
 					continue;
 				} // Of if
 
 				Triple tempTriple = dataset.getTriple(i, j);
 				int tempUserId = tempTriple.user;
 				int tempItemId = tempTriple.item;
-				double tempRate = tempTriple.rating;
-
-				double tempPrediction = predict(tempUserId, tempItemId);// +
-																		// DataInfo.mean_rating;
 
-				if (tempPrediction < dataset.getRatingLowerBound()) {
-					tempPrediction = dataset.getRatingLowerBound();
-				} else if (tempPrediction > dataset.getRatingUpperBound()) {
-					tempPrediction = dataset.getRatingUpperBound();
+				double tempResidual = tempTriple.rating - predict(tempUserId, tempItemId);
+				tempLossSum += tempResidual * tempResidual;
+				tempNumUpdates++;
+
+				// Bias corrections for Adam.
+				if (tempAdam) {
+					userUpdateCounts[tempUserId]++;
+					itemUpdateCounts[tempItemId]++;
+					tempUserCorrection1 = 1 - Math.pow(adamBeta1, userUpdateCounts[tempUserId]);
+					tempUserCorrection2 = 1 - Math.pow(adamBeta2, userUpdateCounts[tempUserId]);
+					tempItemCorrection1 = 1 - Math.pow(adamBeta1, itemUpdateCounts[tempItemId]);
+					tempItemCorrection2 = 1 - Math.pow(adamBeta2, itemUpdateCounts[tempItemId]);
 				} // Of if
 
-				double tempError = tempRate - tempPrediction;
-				resultRsme += tempError * tempError;
-				tempTestCount++;
+				int tempUserOffset = tempUserId * rank;
+				int tempItemOffset = tempItemId * rank;
+				for (int k = 0; k < rank; k++) {
+					tempUserGradient = 2 * tempResidual * itemSubspace[tempItemId][k]
+							- lambda * userSubspace[tempUserId][k];
+					tempItemGradient = 2 * tempResidual * userSubspace[tempUserId][k]
+							- lambda * itemSubspace[tempItemId][k];
+
+					userSubspace[tempUserId][k] += adaptiveIncrement(userFirstMoments,
+							userSecondMoments, tempUserOffset + k, tempUserGradient, tempAdam,
+							tempUserCorrection1, tempUserCorrection2);
+					itemSubspace[tempItemId][k] += adaptiveIncrement(itemFirstMoments,
+							itemSecondMoments, tempItemOffset + k, tempItemGradient, tempAdam,
+							tempItemCorrection1, tempItemCorrection2);
+				} // Of for k
 			} // Of for j
 		} // Of for i
 
-		return Math.sqrt(resultRsme / tempTestCount);
+		epochNumUpdates = tempNumUpdates;
+		trainingLoss = tempLossSum / Math.max(tempNumUpdates, 1);
+	}// Of updateAdaptive
+
+	/**
+	 ************************ 
+	 * Compute the increment of one parameter with AdaGrad or Adam. The
+	 * accumulators are updated at the same time.
+	 * 
+	 * @param paraFirstMoments
+	 *            The first moments, only used by Adam.
+	 * @param paraSecondMoments
+	 *            The second moments.
+	 * @param paraIndex
+	 *            The index of the parameter in the flat arrays.
+	 * @param paraGradient
+	 *            The gradient (in the ascending direction).
+	 * @param paraAdam
+	 *            Adam or AdaGrad.
+	 * @param paraCorrection1
+	 *            The bias correction of the first moment.
+	 * @param paraCorrection2
+	 *            The bias correction of the second moment.
+	 * @return The increment.
+	 ************************ 
+	 */
+	double adaptiveIncrement(double[] paraFirstMoments, double[] paraSecondMoments,
+			int paraIndex, double paraGradient, boolean paraAdam, double paraCorrection1,
+			double paraCorrection2) {
+		if (!paraAdam) {
+			paraSecondMoments[paraIndex] += paraGradient * paraGradient;
+			return alpha * paraGradient
+					/ (Math.sqrt(paraSecondMoments[paraIndex]) + ADAPTIVE_EPSILON);
+		} // Of if
+
+		paraFirstMoments[paraIndex] = adamBeta1 * paraFirstMoments[paraIndex]
+				+ (1 - adamBeta1) * paraGradient;
+		paraSecondMoments[paraIndex] = adamBeta2 * paraSecondMoments[paraIndex]
+				+ (1 - adamBeta2) * paraGradient * paraGradient;
+		return alpha * (paraFirstMoments[paraIndex] / paraCorrection1)
+				/ (Math.sqrt(paraSecondMoments[paraIndex] / paraCorrection2) + ADAPTIVE_EPSILON);
+	}// Of adaptiveIncrement
+
+	/**
+	 ************************ 
+	 * Compute the RSME.
+	 * 
+	 * @return RSME of the current factorization.
+	 ************************ 
+	 */
+	public double rsme() {
+		return evaluate().rmse;
 	}// Of rsme
 
 	/**
@@ -378,39 +1190,114 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	 ************************ 
 	 */
 	public double mae() {
-		double resultMae = 0;
-		int tempTestCount = 0;
-
-		for (int i = 0; i < dataset.getNumUsers(); i++) {
-			for (int j = 0; j < dataset.getUserNumRatings(i); j++) {
-				// Ignore the training set.
-				if (dataset.getTrainIndication(i, j)) {
-					continue;
-				} // Of if
+		return evaluate().mae;
+	}// Of mae
 
-				Triple tempTriple = dataset.getTriple(i, j);
-				int tempUserId = tempTriple.user;
-				int tempItemId = tempTriple.item;
-				double tempRate = tempTriple.rating;
+	/**
+	 ************************ 
+	 * Clamp the prediction into the rating range.
+	 * 
+	 * @param paraPrediction
+	 *            The prediction.
+	 * @return The clamped prediction.
+	 ************************ 
+	 */
+	double clampPrediction(double paraPrediction) {
+		if (paraPrediction < dataset.getRatingLowerBound()) {
+			return dataset.getRatingLowerBound();
+		} else if (paraPrediction > dataset.getRatingUpperBound()) {
+			return dataset.getRatingUpperBound();
+		} // Of if
+		return paraPrediction;
+	}// Of clampPrediction
 
-				double tempPrediction = predict(tempUserId, tempItemId);
+	/**
+	 ************************ 
+	 * Compute MAE, RSME and the count of the testing set in one pass.
+	 * 
+	 * @return The evaluation result without the error histogram.
+	 ************************ 
+	 */
+	public EvaluationResult evaluate() {
+		return evaluate(0, 1);
+	}// Of evaluate
 
-				if (tempPrediction < dataset.getRatingLowerBound()) {
-					tempPrediction = dataset.getRatingLowerBound();
-				} else if (tempPrediction > dataset.getRatingUpperBound()) {
-					tempPrediction = dataset.getRatingUpperBound();
-				} // Of if
+	/**
+	 ************************ 
+	 * Compute MAE, RSME, the count and the histogram of absolute errors of
+	 * the testing set in one pass. The testing positions are precomputed by
+	 * the dataset. The pass is cut into a fixed number of chunks handled in
+	 * parallel, whose partial sums are merged in order, hence the result does
+	 * not depend on the number of threads.
+	 * 
+	 * @param paraNumBins
+	 *            The number of histogram bins. 0 for no histogram.
+	 * @param paraBinWidth
+	 *            The width of each bin.
+	 * @return The evaluation result.
+	 ************************ 
+	 */
+	public EvaluationResult evaluate(final int paraNumBins, final double paraBinWidth) {
+		final int[] tempUsers = dataset.getTestingUsers();
+		final int[] tempIndices = dataset.getTestingIndices();
+		final int tempNumChunks = ParallelTools.DEFAULT_NUM_CHUNKS;
+		final double[] tempAbsoluteSums = new double[tempNumChunks];
+		final double[] tempSquareSums = new double[tempNumChunks];
+		final int[][] tempHistograms = new int[tempNumChunks][paraNumBins];
+
+		ParallelTools.parallelFor(tempUsers.length, tempNumChunks, new ParallelTools.RangeTask() {
+			public void run(int paraChunk, int paraStart, int paraEnd) {
+				double tempAbsoluteSum = 0;
+				double tempSquareSum = 0;
+				int[] tempHistogram = tempHistograms[paraChunk];
+				Triple tempTriple;
+				double tempError;
+				int tempBin;
+				for (int i = paraStart; i < paraEnd; i++) {
+					tempTriple = dataset.getTriple(tempUsers[i], tempIndices[i]);
+					tempError = Math.abs(tempTriple.rating
+							- clampPrediction(predict(tempTriple.user, tempTriple.item)));
+					tempAbsoluteSum += tempError;
+					tempSquareSum += tempError * tempError;
+
+					if (paraNumBins > 0) {
+						tempBin = (int) (tempError / paraBinWidth);
+						if (tempBin >= paraNumBins) {
+							tempBin = paraNumBins - 1;
+						} // Of if
+						tempHistogram[tempBin]++;
+					} // Of if
+				} // Of for i
+				tempAbsoluteSums[paraChunk] = tempAbsoluteSum;
+				tempSquareSums[paraChunk] = tempSquareSum;
+			}// Of run
+		});
+
+		// Merge in the order of chunks.
+		EvaluationResult resultEvaluation = new EvaluationResult();
+		double tempAbsoluteSum = 0;
+		double tempSquareSum = 0;
+		for (int i = 0; i < tempNumChunks; i++) {
+			tempAbsoluteSum += tempAbsoluteSums[i];
+			tempSquareSum += tempSquareSums[i];
+		} // Of for i
 
-				double tempError = tempRate - tempPrediction;
+		resultEvaluation.count = tempUsers.length;
+		resultEvaluation.mae = tempAbsoluteSum / resultEvaluation.count;
+		resultEvaluation.rmse = Math.sqrt(tempSquareSum / resultEvaluation.count);
 
-				resultMae += Math.abs(tempError);
-				// System.out.println("resultMae: " + resultMae);
-				tempTestCount++;
-			} // Of for j
-		} // Of for i
+		if (paraNumBins > 0) {
+			resultEvaluation.binWidth = paraBinWidth;
+			resultEvaluation.errorHistogram = new int[paraNumBins];
+			for (int i = 0; i < tempNumChunks; i++) {
+				for (int j = 0; j < paraNumBins; j++) {
+					resultEvaluation.errorHistogram[j] += tempHistograms[i][j];
+				} // Of for j
+			} // Of for i
+		} // Of if
 
-		return (resultMae / tempTestCount);
-	}// Of mae
+		return resultEvaluation;
+	}// Of evaluate
 
 	/**
 	 ************************ 
@@ -431,6 +1318,9 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 			MF2DBoolean tempLearner = new MF2DBoolean(tempDataset);
 
 			tempLearner.setParameters(10, 0.0001, 0.005, PQ_REGULAR, paraRounds);
+			tempLearner.setEarlyStopping(0.0001, 3, 1000);
+			RingBufferTrainingListener tempRecentEpochs = new RingBufferTrainingListener(10);
+			tempLearner.addTrainingListener(tempRecentEpochs);
 			// tempMF.setTestingSetRemainder(2);
 			// Step 2. Initialize the feature matrices U and V
 			tempLearner.initializeSubspaces(0.5);
@@ -439,10 +1329,12 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 			System.out.println("Begin Training ! ! !");
 
 			tempLearner.train();
+			System.out.println("The last epoch: " + tempRecentEpochs.getLatest());
+			System.out.println(
+					"Mean updates/s: " + (long) tempRecentEpochs.getMeanUpdatesPerSecond());
 
-			double tempMAE = tempLearner.mae();
-			double tempRSME = tempLearner.rsme();
-			System.out.println("Finally, MAE = " + tempMAE + ", RSME = " + tempRSME);
+			EvaluationResult tempEvaluation = tempLearner.evaluate(10, 0.5);
+			System.out.println("Finally, " + tempEvaluation);
 		} catch (Exception e) {
 			e.printStackTrace();
 		} // of try
@@ -478,14 +1370,44 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 			tempLearner.train();
 
 			tempDataset.initializeTraining(0);
-			double tempMAE = tempLearner.mae();
-			double tempRSME = tempLearner.rsme();
-			System.out.println("Finally, MAE = " + tempMAE + ", RSME = " + tempRSME);
+			EvaluationResult tempEvaluation = tempLearner.evaluate();
+			System.out.println("Finally, " + tempEvaluation);
 		} catch (Exception e) {
 			e.printStackTrace();
 		} // of try
 	}// Of testAllTrainingTesting
 
+	/**
+	 ************************ 
+	 * The training testing scenario with CCD++.
+	 ************************ 
+	 */
+	public static void testCCD(String paraFilename, int paraNumUsers, int paraNumItems,
+			int paraNumRatings, double paraRatingLowerBound, double paraRatingUpperBound,
+			double paraLikeThreshold, boolean paraCompress, double paraLambda, int paraRounds) {
+		try {
+			RatingSystem2DBoolean tempDataset = new RatingSystem2DBoolean(paraFilename,
+					paraNumUsers, paraNumItems, paraNumRatings, paraRatingLowerBound,
+					paraRatingUpperBound, paraLikeThreshold, paraCompress);
+			tempDataset.initializeTraining(0.8);
+
+			MF2DBoolean tempLearner = new MF2DBoolean(tempDataset);
+			tempLearner.setParameters(10, 0, paraLambda, PQ_REGULAR, paraRounds);
+			tempLearner.setCCDSolver(CCDSolver.DEFAULT_INNER_ITERATIONS);
+			tempLearner.setEarlyStopping(0.0001, 3, 1000);
+			tempLearner.initializeSubspaces(0.5);
+
+			long tempStart = System.currentTimeMillis();
+			tempLearner.train();
+			System.out.println("CCD++ training takes " + (System.currentTimeMillis() - tempStart)
+					+ " ms, training loss = " + tempLearner.getTrainingLoss());
+
+			System.out.println("Finally, " + tempLearner.evaluate(10, 0.5));
+		} catch (Exception e) {
+			e.printStackTrace();
+		} // of try
+	}// Of testCCD
+
 	/**
 	 ************************ 
 	 * @param args
@@ -494,6 +1416,8 @@ public class MF2DBoolean extends UserBasedThreeWayRecommender {
 	public static void main(String args[]) {
 		testAllTrainingTesting("data/jester-data-1/jester-data-1.txt", 24983, 101, 1810455, -10, 10,
 				0.5, false, 150);
+		// testCCD("data/movielens943u1682m.txt", 943, 1682, 100000, 1, 5, 3.5, true, 0.2,
+		// 100);
 		// testSameTrainingTesting("data/jester-data-1/jester-data-1.txt",
 		// 24983, 101, 1810455, -10, 10, 500);
 	}// Of main
@@ -1,5 +1,6 @@
 package algorithm;
 
+import java.io.*;
 import java.util.Arrays;
 
 import common.*;
@@ -30,6 +31,138 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 	 */
 	double[] favoriteThresholds = { -2.0, 0.5 };
 
+	/**
+	 * Fold in a user by SGD rounds starting from a perturbed vector.
+	 */
+	public static final int SGD_FOLD_IN = 0;
+
+	/**
+	 * Fold in a user by solving the ridge regression over the training items
+	 * of the user exactly, with the item subspace fixed.
+	 */
+	public static final int RIDGE_FOLD_IN = 1;
+
+	/**
+	 * Fold in a user exactly with rank-one updates of a Cholesky factor for
+	 * the ratings acquired since the last round of the conversation. The ridge
+	 * is fixed to lambda / 2 instead of lambda / 2 times the number of ratings
+	 * as RIDGE_FOLD_IN, since a ridge growing with the ratings is not a
+	 * rank-one change. Users with many ratings are hence regularized less than
+	 * by PQ_REGULAR training. foldInUsers() solves the same problem.
+	 */
+	public static final int SESSION_FOLD_IN = 2;
+
+	/**
+	 * Select the items to recommend/promote randomly from the bands.
+	 */
+	public static final int RANDOM_SELECTION = 0;
+
+	/**
+	 * Recommend the best items of the recommendation band, and promote the
+	 * next best items no lower than the promotion threshold.
+	 */
+	public static final int RANKED_SELECTION = 1;
+
+	/**
+	 * How to select the items to recommend/promote.
+	 */
+	int selectionMode = RANDOM_SELECTION;
+
+	/**
+	 * The ridge added for NO_REGULAR to keep the system positive definite.
+	 */
+	public static final double RIDGE_EPSILON = 1e-6;
+
+	/**
+	 * How to fold in a user.
+	 */
+	int foldInScheme = SGD_FOLD_IN;
+
+	/**
+	 * Fold in the user with the acquired ratings in each round of
+	 * threeWayRecommend(int).
+	 */
+	boolean conversationalFoldIn = false;
+
+	/**
+	 * The scratch matrix of the ridge fold-in in trainUser(int).
+	 */
+	double[][] foldInMatrix;
+
+	/**
+	 * The scratch vector of the ridge fold-in in trainUser(int).
+	 */
+	double[] foldInVector;
+
+	/**
+	 * The fold-in state of the current conversation for SESSION_FOLD_IN.
+	 */
+	FoldInSession foldInSession = new FoldInSession(this);
+
+	/**
+	 * Start SGD fold-in from the current user vector instead of a perturbed
+	 * one.
+	 */
+	boolean warmStartFoldIn = false;
+
+	/**
+	 * SGD fold-in stops when the norm of the change of the user vector in one
+	 * round is below it. 0 means always running incrementalTrainRounds rounds,
+	 * which remains the cap.
+	 */
+	double foldInTolerance = 0;
+
+	/**
+	 * The user vector before the current SGD fold-in round.
+	 */
+	double[] foldInPrevious;
+
+	/**
+	 * The number of rounds of the last SGD fold-in.
+	 */
+	int lastFoldInRounds;
+
+	/**
+	 * The total number of rounds of SGD fold-ins.
+	 */
+	long totalFoldInRounds;
+
+	/**
+	 * The number of SGD fold-ins.
+	 */
+	long numFoldIns;
+
+	/**
+	 * The scratch buffer of the acquired items in threeWayRecommend(int,
+	 * int[][]).
+	 */
+	int[] acquiredItemsBuffer;
+
+	/**
+	 * The reservoirs sampling the recommendation and promotion candidates.
+	 */
+	ReservoirBandCollector bandCollector = new ReservoirBandCollector(SimpleTools.random);
+
+	/**
+	 * The heaps keeping the best recommendation and promotion candidates.
+	 */
+	RankedBandCollector rankedCollector = new RankedBandCollector();
+
+	/**
+	 * The scratch buffer of the predictions.
+	 */
+	double[] predictionsBuffer;
+
+	/**
+	 * The result holder reused by recommendForUser(int).
+	 */
+	int[][] resultHolder = new int[2][];
+
+	/**
+	 * The items already recommended or promoted, as a bitset.
+	 */
+	long[] excludedItemsBuffer;
+
 	/**
 	 ************************ 
 	 * The first constructor.
@@ -63,6 +196,105 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 		favoriteThresholds = paraThresholds;
 	}// Of setFavoriteThresholds
 
+	/**
+	 ************************ 
+	 * Setter.
+	 * 
+	 * @param paraFoldInScheme
+	 *            SGD_FOLD_IN, RIDGE_FOLD_IN or SESSION_FOLD_IN.
+	 ************************ 
+	 */
+	public void setFoldInScheme(int paraFoldInScheme) {
+		foldInScheme = paraFoldInScheme;
+	}// Of setFoldInScheme
+
+	/**
+	 ************************ 
+	 * Setter.
+	 * 
+	 * @param paraSelectionMode
+	 *            RANDOM_SELECTION or RANKED_SELECTION.
+	 ************************ 
+	 */
+	public void setSelectionMode(int paraSelectionMode) {
+		selectionMode = paraSelectionMode;
+	}// Of setSelectionMode
+
+	/**
+	 ************************ 
+	 * Setter.
+	 * 
+	 * @param paraValue
+	 *            Fold in the user in each round of threeWayRecommend(int) or
+	 *            not.
+	 ************************ 
+	 */
+	public void setConversationalFoldIn(boolean paraValue) {
+		conversationalFoldIn = paraValue;
+	}// Of setConversationalFoldIn
+
+	/**
+	 ************************ 
+	 * Setter.
+	 * 
+	 * @param paraValue
+	 *            Start SGD fold-in from the current user vector or not.
+	 ************************ 
+	 */
+	public void setWarmStartFoldIn(boolean paraValue) {
+		warmStartFoldIn = paraValue;
+	}// Of setWarmStartFoldIn
+
+	/**
+	 ************************ 
+	 * Setter.
+	 * 
+	 * @param paraValue
+	 *            The tolerance of the update norm of SGD fold-in, 0 for none.
+	 ************************ 
+	 */
+	public void setFoldInTolerance(double paraValue) {
+		foldInTolerance = paraValue;
+	}// Of setFoldInTolerance
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public int getLastFoldInRounds() {
+		return lastFoldInRounds;
+	}// Of getLastFoldInRounds
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public long getTotalFoldInRounds() {
+		return totalFoldInRounds;
+	}// Of getTotalFoldInRounds
+
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public long getNumFoldIns() {
+		return numFoldIns;
+	}// Of getNumFoldIns
+
+	/**
+	 ************************ 
+	 * Reset the fold-in statistics.
+	 ************************ 
+	 */
+	public void resetFoldInStatistics() {
+		lastFoldInRounds = 0;
+		totalFoldInRounds = 0;
+		numFoldIns = 0;
+	}// Of resetFoldInStatistics
+
 	/**
 	 ************************ 
 	 * Train according to data of the user.
@@ -74,19 +306,135 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 	 ************************ 
 	 */
 	public void trainUser(int paraUser) {
+		userFactorVersion++;
+		if (foldInScheme == RIDGE_FOLD_IN) {
+			if ((foldInMatrix == null) || (foldInVector.length != rank)) {
+				foldInMatrix = new double[rank][rank];
+				foldInVector = new double[rank];
+			} // Of if
+			foldInUserRidge(paraUser, foldInMatrix, foldInVector);
+			return;
+		} else if (foldInScheme == SESSION_FOLD_IN) {
+			foldInSession.update(paraUser, foldInRidge(0));
+			return;
+		} // Of if
+
 		// Step 1. Reset the user subspace of the given user.
+		if (!warmStartFoldIn) {
+			if ((regularScheme == ADAGRAD_REGULAR) || (regularScheme == ADAM_REGULAR)) {
+				resetUserOptimizerState(paraUser);
+			} // Of if
+			for (int i = 0; i < rank; i++) {
+				userSubspace[paraUser][i] += (Common.random.nextDouble() - 0.5) * 2
+						* subspaceValueRange;
+			} // Of for i
+				// System.out.println("initialize userSubspace[" + paraUser + "] = "
+				// + Arrays.toString(userSubspace[paraUser]));
+		} // Of if
+
+		// Step 2. Update the user subspace until the change is small.
+		double[] tempUserVector = userSubspace[paraUser];
+		if ((foldInPrevious == null) || (foldInPrevious.length != rank)) {
+			foldInPrevious = new double[rank];
+		} // Of if
+		double tempSquaredTolerance = foldInTolerance * foldInTolerance;
+		int tempRounds = 0;
+		while (tempRounds < incrementalTrainRounds) {
+			System.arraycopy(tempUserVector, 0, foldInPrevious, 0, rank);
+			updateUserSubspace(paraUser);
+			tempRounds++;
+
+			double tempSquaredNorm = 0;
+			for (int i = 0; i < rank; i++) {
+				double tempDifference = tempUserVector[i] - foldInPrevious[i];
+				tempSquaredNorm += tempDifference * tempDifference;
+			} // Of for i
+			if (tempSquaredNorm < tempSquaredTolerance) {
+				break;
+			} // Of if
+		} // Of while
+
+		lastFoldInRounds = tempRounds;
+		totalFoldInRounds += tempRounds;
+		numFoldIns++;
+	}// Of trainUser
+
+	/**
+	 ************************ 
+	 * The ridge of the exact fold-in. With RIDGE_FOLD_IN, it is lambda / 2
+	 * times the number of the ratings, which matches the objective of
+	 * PQ_REGULAR. With SESSION_FOLD_IN, it is lambda / 2. A tiny value is
+	 * added, which is the only one for NO_REGULAR.
+	 * 
+	 * @param paraNumRatings
+	 *            The number of training ratings of the user.
+	 * @return The ridge.
+	 ************************ 
+	 */
+	double foldInRidge(int paraNumRatings) {
+		double resultRidge = RIDGE_EPSILON;
+		if (regularScheme == NO_REGULAR) {
+			return resultRidge;
+		} // Of if
+
+		if (foldInScheme == SESSION_FOLD_IN) {
+			resultRidge += lambda / 2;
+		} else {
+			resultRidge += lambda / 2 * paraNumRatings;
+		} // Of if
+		return resultRidge;
+	}// Of foldInRidge
+
+	/**
+	 ************************ 
+	 * Fold in the user exactly. The user vector u solves (V^T V + l I) u = V^T
+	 * r, where V holds the item vectors of the training items of the user, r
+	 * the ratings, and l is given by foldInRidge().
+	 * 
+	 * @param paraUser
+	 *            The given user.
+	 * @param paraMatrix
+	 *            The scratch matrix, at least rank x rank.
+	 * @param paraVector
+	 *            The scratch vector, at least rank long.
+	 ************************ 
+	 */
+	void foldInUserRidge(int paraUser, double[][] paraMatrix, double[] paraVector) {
+		// Step 1. The lower triangle of V^T V, and V^T r.
 		for (int i = 0; i < rank; i++) {
-			userSubspace[paraUser][i] += (Common.random.nextDouble() - 0.5) * 2
-					* subspaceValueRange;
+			Arrays.fill(paraMatrix[i], 0, rank, 0);
+		} // Of for i
+		Arrays.fill(paraVector, 0, rank, 0);
+		int tempNumRatings = 0;
+		for (int i = 0; i < dataset.getUserNumRatings(paraUser); i++) {
+			if (!dataset.getTrainIndication(paraUser, i)) {
+				continue;
+			} // Of if
+
+			Triple tempTriple = dataset.getTriple(paraUser, i);
+			double[] tempItemVector = itemSubspace[tempTriple.item];
+			for (int j = 0; j < rank; j++) {
+				double tempValue = tempItemVector[j];
+				double[] tempRow = paraMatrix[j];
+				for (int k = 0; k <= j; k++) {
+					tempRow[k] += tempValue * tempItemVector[k];
+				} // Of for k
+				paraVector[j] += tempTriple.rating * tempValue;
+			} // Of for j
+			tempNumRatings++;
 		} // Of for i
-			// System.out.println("initialize userSubspace[" + paraUser + "] = "
-			// + Arrays.toString(userSubspace[paraUser]));
 
-		// Step 2. Update the user subspace.
-		for (int i = 0; i < incrementalTrainRounds; i++) {
-			updateUserSubspace(paraUser);
+		// Step 2. The ridge.
+		double tempRidge = foldInRidge(tempNumRatings);
+		for (int i = 0; i < rank; i++) {
+			paraMatrix[i][i] += tempRidge;
 		} // Of for i
-	}// Of trainUser
+
+		// Step 3. Solve.
+		if (SimpleTools.choleskySolve(paraMatrix, paraVector, rank)) {
+			System.arraycopy(paraVector, 0, userSubspace[paraUser], 0, rank);
+		} // Of if
+	}// Of foldInUserRidge
 
 	/**
 	 ************************ 
@@ -101,6 +449,10 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 		case PQ_REGULAR:
 			updateUserSubspacePQRegular(paraUser);
 			break;
+		case ADAGRAD_REGULAR:
+		case ADAM_REGULAR:
+			updateUserSubspaceAdaptive(paraUser);
+			break;
 		default:
 			System.out.println("Unsupported regular scheme: " + regularScheme);
 			System.exit(0);
@@ -175,6 +527,47 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 		// Arrays.toString(userSubspace[paraUser]));
 	}// Of updateUserSubspacePQRegular
 
+	/**
+	 ************************ 
+	 * Update the user sub-space using the training data of the given user
+	 * with adaptive learning rates. Item subspace is unchanged.
+	 * 
+	 * @param paraUser
+	 *            The given user.
+	 ************************ 
+	 */
+	public void updateUserSubspaceAdaptive(int paraUser) {
+		boolean tempAdam = (regularScheme == ADAM_REGULAR);
+		double tempCorrection1 = 1;
+		double tempCorrection2 = 1;
+		int tempOffset = paraUser * rank;
+		for (int i = 0; i < dataset.getUserNumRatings(paraUser); i++) {
+			// Ignore the testing set.
+			if (!dataset.getTrainIndication(paraUser, i)) {
+				continue;
+			} // Of if
+
+			Triple tempTriple = dataset.getTriple(paraUser, i);
+			int tempItemId = tempTriple.item;
+			double tempResidual = tempTriple.rating - predict(paraUser, tempItemId);
+
+			if (tempAdam) {
+				userUpdateCounts[paraUser]++;
+				tempCorrection1 = 1 - Math.pow(adamBeta1, userUpdateCounts[paraUser]);
+				tempCorrection2 = 1 - Math.pow(adamBeta2, userUpdateCounts[paraUser]);
+			} // Of if
+
+			double tempGradient;
+			for (int j = 0; j < rank; j++) {
+				tempGradient = 2 * tempResidual * itemSubspace[tempItemId][j]
+						- lambda * userSubspace[paraUser][j];
+				userSubspace[paraUser][j] += adaptiveIncrement(userFirstMoments,
+						userSecondMoments, tempOffset + j, tempGradient, tempAdam,
+						tempCorrection1, tempCorrection2);
+			} // Of for j
+		} // Of for i
+	}// Of updateUserSubspaceAdaptive
+
 	/**
 	 ************************ 
 	 * Pre-train. All data are employed for training.
@@ -190,6 +583,180 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 		train();
 	}// Of pretrain
 
+	/**
+	 ************************ 
+	 * Pre-train on a stratified sample of users, and then fold in the other
+	 * users with the item subspace frozen. The fold-in of users is independent,
+	 * hence done in parallel. The cost of the first stage scales with the
+	 * sample size instead of the number of users.
+	 * 
+	 * @param paraSampleFraction
+	 *            The fraction of users for pre-training, in (0, 1].
+	 * @param paraFoldInRounds
+	 *            The number of rounds to fold in each of the other users.
+	 ************************ 
+	 */
+	public void pretrainOnSample(double paraSampleFraction, int paraFoldInRounds) {
+		dataset.setAllTraining();
+
+		// Step 1. Pre-train on the sample only.
+		boolean[] tempSampled = stratifiedUserSample(paraSampleFraction);
+		RatingSystem2DBoolean tempFullDataset = dataset;
+		dataset = new RatingSystem2DBoolean(tempFullDataset, tempSampled);
+		try {
+			initializeSubspaces(0.5);
+			train();
+		} finally {
+			dataset = tempFullDataset;
+		} // Of try
+
+		// Step 2. Fold in the others.
+		int tempNumOthers = 0;
+		for (int i = 0; i < tempSampled.length; i++) {
+			if (!tempSampled[i]) {
+				tempNumOthers++;
+			} // Of if
+		} // Of for i
+		int[] tempOthers = new int[tempNumOthers];
+		tempNumOthers = 0;
+		for (int i = 0; i < tempSampled.length; i++) {
+			if (!tempSampled[i]) {
+				tempOthers[tempNumOthers++] = i;
+			} // Of if
+		} // Of for i
+		foldInUsers(tempOthers, paraFoldInRounds);
+		System.out.println("Pre-trained on " + (tempSampled.length - tempNumOthers)
+				+ " users, folded in " + tempNumOthers + " users.");
+	}// Of pretrainOnSample
+
+	/**
+	 ************************ 
+	 * Sample users stratified by their numbers of ratings. Users are sorted by
+	 * the number of ratings and picked systematically with a random start, so
+	 * that each activity level is represented in proportion.
+	 * 
+	 * @param paraFraction
+	 *            The fraction of users to sample.
+	 * @return Whether or not each user is sampled.
+	 ************************ 
+	 */
+	boolean[] stratifiedUserSample(double paraFraction) {
+		int tempNumUsers = dataset.getNumUsers();
+		boolean[] resultSampled = new boolean[tempNumUsers];
+		if (paraFraction >= 1) {
+			Arrays.fill(resultSampled, true);
+			return resultSampled;
+		} // Of if
+
+		// Counting sort by the number of ratings.
+		int tempMaxCount = 0;
+		for (int i = 0; i < tempNumUsers; i++) {
+			tempMaxCount = Math.max(tempMaxCount, dataset.getUserNumRatings(i));
+		} // Of for i
+		int[] tempStarts = new int[tempMaxCount + 2];
+		for (int i = 0; i < tempNumUsers; i++) {
+			tempStarts[dataset.getUserNumRatings(i) + 1]++;
+		} // Of for i
+		for (int i = 0; i <= tempMaxCount; i++) {
+			tempStarts[i + 1] += tempStarts[i];
+		} // Of for i
+		int[] tempSortedUsers = new int[tempNumUsers];
+		for (int i = 0; i < tempNumUsers; i++) {
+			tempSortedUsers[tempStarts[dataset.getUserNumRatings(i)]++] = i;
+		} // Of for i
+
+		// Systematic sampling.
+		double tempStep = 1 / paraFraction;
+		for (double tempPosition = Common.random.nextDouble()
+				* tempStep; tempPosition < tempNumUsers; tempPosition += tempStep) {
+			resultSampled[tempSortedUsers[(int) tempPosition]] = true;
+		} // Of for tempPosition
+
+		return resultSampled;
+	}// Of stratifiedUserSample
+
+	/**
+	 ************************ 
+	 * Fold in users with the item subspace frozen, in parallel. With
+	 * SGD_FOLD_IN, the current user vectors serve as the starting points. With
+	 * RIDGE_FOLD_IN or SESSION_FOLD_IN, the rounds are not used, and the
+	 * respective ridge of foldInRidge() is employed.
+	 * 
+	 * @param paraUsers
+	 *            The users.
+	 * @param paraRounds
+	 *            The number of rounds for each user.
+	 ************************ 
+	 */
+	public void foldInUsers(final int[] paraUsers, final int paraRounds) {
+		userFactorVersion++;
+		ParallelTools.parallelFor(paraUsers.length, ParallelTools.DEFAULT_NUM_CHUNKS,
+				new ParallelTools.RangeTask() {
+					public void run(int paraChunk, int paraStart, int paraEnd) {
+						if (foldInScheme != SGD_FOLD_IN) {
+							double[][] tempMatrix = new double[rank][rank];
+							double[] tempVector = new double[rank];
+							for (int i = paraStart; i < paraEnd; i++) {
+								foldInUserRidge(paraUsers[i], tempMatrix, tempVector);
+							} // Of for i
+							return;
+						} // Of if
+
+						for (int i = paraStart; i < paraEnd; i++) {
+							for (int j = 0; j < paraRounds; j++) {
+								updateUserSubspace(paraUsers[i]);
+							} // Of for j
+						} // Of for i
+					}// Of run
+				});
+	}// Of foldInUsers
+
+	/**
+	 ************************ 
+	 * Pre-train with a checkpoint. If the checkpoint matches the dataset and
+	 * the parameters, it is loaded and trained further only if it has fewer
+	 * rounds than trainRounds and its training has not converged. Otherwise,
+	 * or if it cannot be read, the model is pre-trained from scratch. The
+	 * checkpoint is then (re-)written.
+	 * 
+	 * @param paraCheckpointFilename
+	 *            The checkpoint file.
+	 ************************ 
+	 */
+	public void pretrain(String paraCheckpointFilename) {
+		dataset.setAllTraining();
+
+		// Step 1. Try to load. The model is unchanged if it fails.
+		boolean tempLoaded = false;
+		if (new File(paraCheckpointFilename).exists()) {
+			try {
+				tempLoaded = MFCheckpoint.load(this, paraCheckpointFilename, true);
+			} catch (IOException ee) {
+				System.out.println("Checkpoint " + paraCheckpointFilename
+						+ " cannot be loaded: " + ee);
+			} // Of try
+		} // Of if
+
+		// Step 2. Train from scratch, or resume.
+		if (!tempLoaded) {
+			pretrain();
+		} else if (!converged && (totalTrainedRounds < trainRounds)) {
+			System.out.println("Resume from " + paraCheckpointFilename + " after "
+					+ totalTrainedRounds + " rounds.");
+			train(trainRounds - totalTrainedRounds);
+		} else {
+			System.out.println("Pre-trained model loaded from " + paraCheckpointFilename);
+			return;
+		} // Of if
+
+		// Step 3. Save for next time.
+		try {
+			MFCheckpoint.save(this, paraCheckpointFilename);
+		} catch (IOException ee) {
+			System.out.println("Checkpoint " + paraCheckpointFilename + " cannot be saved: " + ee);
+		} // Of try
+	}// Of pretrain
+
 	/**
 	 *************************
 	 * Recommend for one user.
@@ -199,8 +766,9 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 	 *************************
 	 */
 	public void recommendForUser(int paraUser) {
+		foldInSession.reset();
 		while (true) {
-			int[][] tempRecommendationsPromotions = threeWayRecommend(paraUser);
+			int[][] tempRecommendationsPromotions = threeWayRecommend(paraUser, resultHolder);
 			if (tempRecommendationsPromotions == null) {
 				break;
 			} // Of if
@@ -213,8 +781,10 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 							tempRecommendationsPromotions[i][j]);
 					if ((tempRating != RatingSystem2DBoolean.DEFAULT_MISSING_RATING)
 							&& (tempRating > dataset.getLikeThreshold())) {
-						SimpleTools.processTrackingOutput(
-								"" + tempRecommendationsPromotions[i][j] + " successful.");
+						if (SimpleTools.processTracking) {
+							SimpleTools.processTrackingOutput(
+									"" + tempRecommendationsPromotions[i][j] + " successful.");
+						} // Of if
 						tempOneSuccess = true;
 						break;
 					} // Of if
@@ -228,9 +798,11 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 				break;
 			} // Of if
 
-			SimpleTools.processTrackingOutput("Recommend "
-					+ Arrays.toString(tempRecommendationsPromotions[0]) + ", promote "
-					+ Arrays.toString(tempRecommendationsPromotions[1]) + " to next round.");
+			if (SimpleTools.processTracking) {
+				SimpleTools.processTrackingOutput("Recommend "
+						+ Arrays.toString(tempRecommendationsPromotions[0]) + ", promote "
+						+ Arrays.toString(tempRecommendationsPromotions[1]) + " to next round.");
+			} // Of if
 		} // Of while
 	}// Of recommendForUser
 
@@ -249,11 +821,45 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 	 *************************
 	 */
 	public int[][] threeWayRecommend(int paraUser) {
+		return threeWayRecommend(paraUser, new int[2][]);
+	}// Of threeWayRecommend
+
+	/**
+	 *************************
+	 * Prepare the scratch buffers for threeWayRecommend(int, int[][]).
+	 * 
+	 * @param paraUserNumRatings
+	 *            The number of ratings of the current user.
+	 *************************
+	 */
+	void prepareScratchBuffers(int paraUserNumRatings) {
+		if ((acquiredItemsBuffer == null) || (acquiredItemsBuffer.length < paraUserNumRatings)) {
+			acquiredItemsBuffer = new int[paraUserNumRatings];
+		} // Of if
+		if ((predictionsBuffer == null) || (predictionsBuffer.length != numItems)) {
+			predictionsBuffer = new double[numItems];
+			excludedItemsBuffer = ItemScorer.newItemSet(numItems);
+		} // Of if
+	}// Of prepareScratchBuffers
+
+	/**
+	 *************************
+	 * Three-way recommend with the scratch buffers of this object, so that
+	 * nothing is allocated in the steady state.
+	 * 
+	 * @param paraUser
+	 *            The user.
+	 * @param paraResult
+	 *            The result holder with two rows. A row is allocated only if
+	 *            its length does not fit.
+	 * @return The result holder, or null if there are no enough candidates.
+	 *************************
+	 */
+	public int[][] threeWayRecommend(int paraUser, int[][] paraResult) {
 		int tempUserNumRates = dataset.getUserNumRatings(paraUser);
-		int[] tempAcquiredItems = new int[tempUserNumRates];
+		prepareScratchBuffers(tempUserNumRates);
+		int[] tempAcquiredItems = acquiredItemsBuffer;
 		int tempCounter = 0;
-		int[] tempRecommendationCandidates = new int[numItems];
-		int[] tempPromotionCandidates = new int[numItems];
 
 		// Step 1. Which items have rating information available.
 		tempCounter = 0;
@@ -265,12 +871,6 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 			} // Of if
 		} // Of for i
 
-		// Compress
-		int[] tempCompressedItems = new int[tempCounter];
-		for (int i = 0; i < tempCounter; i++) {
-			tempCompressedItems[i] = tempAcquiredItems[i];
-		} // Of for i
-
 		if (tempCounter == 0) {
 			System.out.println("No known ratings for  user #" + paraUser
 					+ " -- Warning in MF2DBooleanIncremental.threeWayRecommend(). "
@@ -279,36 +879,76 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 		} // Of if
 
 		// Step 2. Predict for the current user.
-		dataset.setUserTraining(paraUser, tempCompressedItems);
-		double[] tempPredicts = predictForUser(paraUser);
+		dataset.setUserTraining(paraUser, tempAcquiredItems, tempCounter);
+		if (conversationalFoldIn) {
+			trainUser(paraUser);
+		} // Of if
 
-		// Step 3. Generate recommendation/promotion candidates list
-		int tempRecommendationCandidatesLength = 0;
-		int tempPromotionCandidatesLength = 0;
+		// Step 3. Feed recommendation/promotion candidates to the reservoirs,
+		// so that they are randomly selected in one pass, or to the heaps, so
+		// that the best ones are kept.
+		double tempRecommendThreshold = favoriteThresholds[1] - dataset.getMeanRating();
+		double tempPromoteThreshold = favoriteThresholds[0] - dataset.getMeanRating();
+		boolean tempRanked = (selectionMode == RANKED_SELECTION);
+		ReservoirBandCollector tempCollector = bandCollector;
+		RankedBandCollector tempRankedCollector = rankedCollector;
+		if (tempRanked) {
+			tempRankedCollector.reset(numRecommend, numPromote, tempRecommendThreshold,
+					tempPromoteThreshold);
+		} else {
+			tempCollector.reset(numRecommend, numPromote);
+		} // Of if
 
-		for (int i = 0; i < numItems; i++) {
-			// Already recommended/promoted before
-			if (currentUserRecommendations[i] || currentUserPromotions[i]) {
-				continue;
+		if (linearScores()) {
+			// Score only items not recommended/promoted before.
+			long[] tempExcluded = excludedItemsBuffer;
+			Arrays.fill(tempExcluded, 0);
+			for (int i = 0; i < numItems; i++) {
+				if (currentUserRecommendations[i] || currentUserPromotions[i]) {
+					ItemScorer.addItem(tempExcluded, i);
+				} // Of if
+			} // Of for i
+			if (tempRanked) {
+				getItemScorer().scoreIntoRanks(paraUser, tempExcluded, tempRankedCollector);
+			} else {
+				getItemScorer().scoreIntoBands(paraUser, tempExcluded, tempRecommendThreshold,
+						tempPromoteThreshold, tempCollector);
 			} // Of if
+		} else {
+			double[] tempPredicts = predictForUser(paraUser, predictionsBuffer);
+			for (int i = 0; i < numItems; i++) {
+				// Already recommended/promoted before
+				if (currentUserRecommendations[i] || currentUserPromotions[i]) {
+					continue;
+				} // Of if
 
-			// System.out.println("tempPredicts[" + i + "]= " + tempPredicts[i]
-			// + "vs. "
-			// + (favoriteThresholds[1] - dataset.getMeanRating()) + " and "
-			// + (favoriteThresholds[0] - dataset.getMeanRating()));
-			if (tempPredicts[i] >= favoriteThresholds[1] - dataset.getMeanRating()) {
-				tempRecommendationCandidates[tempRecommendationCandidatesLength] = i;
-				tempRecommendationCandidatesLength++;
-				// System.out.println("May recommend " + i);
-			} else if (tempPredicts[i] >= favoriteThresholds[0] - dataset.getMeanRating()) {
-				tempPromotionCandidates[tempPromotionCandidatesLength] = i;
-				tempPromotionCandidatesLength++;
-				// System.out.println("May promote " + i);
-			} // Of if
-		} // Of for i
+				if (tempRanked) {
+					tempRankedCollector.add(i, tempPredicts[i]);
+				} else if (tempPredicts[i] >= tempRecommendThreshold) {
+					tempCollector.addRecommendation(i);
+				} else if (tempPredicts[i] >= tempPromoteThreshold) {
+					tempCollector.addPromotion(i);
+				} // Of if
+			} // Of for i
+		} // Of if
 
 		// Step 4. Handle the situation where no enough to
 		// recommend/promote.
+		int tempRecommendationCandidatesLength;
+		int tempPromotionCandidatesLength;
+		int[] tempSelectedRecommendations;
+		int[] tempSelectedPromotions;
+		if (tempRanked) {
+			tempRecommendationCandidatesLength = tempRankedCollector.getNumRecommendations();
+			tempPromotionCandidatesLength = tempRankedCollector.getNumPromotions();
+			tempSelectedRecommendations = tempRankedCollector.getRecommendations();
+			tempSelectedPromotions = tempRankedCollector.getPromotions();
+		} else {
+			tempRecommendationCandidatesLength = tempCollector.getNumRecommendationsSeen();
+			tempPromotionCandidatesLength = tempCollector.getNumPromotionsSeen();
+			tempSelectedRecommendations = tempCollector.getRecommendations();
+			tempSelectedPromotions = tempCollector.getPromotions();
+		} // Of if
 		if (tempRecommendationCandidatesLength < numRecommend) {
 			// System.out.println("User " + paraUser + " has no enough to
 			// recommend: "
@@ -321,13 +961,19 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 			return null;
 		} // Of if
 
-		// Step 5. Randomly select some to recommend/promote.
-		int[] tempRecommendations = null;
-		int[] tempPromotions = null;
+		// Step 5. Recommend/promote the selected ones.
+		if ((paraResult[0] == null) || (paraResult[0].length != numRecommend)) {
+			paraResult[0] = new int[numRecommend];
+		} // Of if
+		if ((paraResult[1] == null) || (paraResult[1].length != numPromote)) {
+			paraResult[1] = new int[numPromote];
+		} // Of if
+		int[] tempRecommendations = paraResult[0];
+		int[] tempPromotions = paraResult[1];
 		try {
 			// Recommend
-			tempRecommendations = SimpleTools.randomSelectFromArray(tempRecommendationCandidates,
-					tempRecommendationCandidatesLength, numRecommend);
+			System.arraycopy(tempSelectedRecommendations, 0, tempRecommendations, 0,
+					numRecommend);
 			for (int i = 0; i < tempRecommendations.length; i++) {
 				currentUserRecommendations[tempRecommendations[i]] = true;
 			} // Of for i
@@ -336,8 +982,7 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 			// Arrays.toString(tempRecommendations) + " to " + paraUser);
 
 			// Promote
-			tempPromotions = SimpleTools.randomSelectFromArray(tempPromotionCandidates,
-					tempPromotionCandidatesLength, numPromote);
+			System.arraycopy(tempSelectedPromotions, 0, tempPromotions, 0, numPromote);
 			for (int i = 0; i < tempPromotions.length; i++) {
 				currentUserPromotions[tempPromotions[i]] = true;
 			} // Of for i
@@ -350,12 +995,7 @@ public class MF2DBooleanIncremental extends MF2DBoolean {
 							+ ee);
 		} // Of try
 
-		// Step 5. Construct the lists.
-		int[][] resultArrays = new int[2][];
-		resultArrays[0] = tempRecommendations;
-		resultArrays[1] = tempPromotions;
-
-		return resultArrays;
+		return paraResult;
 	}// Of threeWayRecommend
 
 	/**
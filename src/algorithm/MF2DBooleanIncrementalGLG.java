@@ -243,20 +243,31 @@ public class MF2DBooleanIncrementalGLG extends MF2DBooleanIncremental {
 
 	/**
 	 ************************ 
-	 * Predict the ratings of the user to each item.
+	 * The predictions are transformed, so ItemScorer cannot be employed.
+	 ************************ 
+	 */
+	boolean linearScores() {
+		return false;
+	}// Of linearScores
+
+	/**
+	 ************************ 
+	 * Predict the ratings of the user to each item into a given buffer.
 	 * Attention: ONLY this method should be overwritten to enable GL transform.
 	 * 
 	 * @param paraUser
 	 *            The user index.
+	 * @param paraPredictions
+	 *            The buffer, at least numItems long.
+	 * @return The buffer.
 	 ************************ 
 	 */
-	public double[] predictForUser(int paraUser) {
+	public double[] predictForUser(int paraUser, double[] paraPredictions) {
 		//System.out.println("glpredictForUser(" + paraUser + ")");
-		double[] resultPredictions = new double[dataset.getNumItems()];
 		for (int i = 0; i < dataset.getNumItems(); i++) {
-			resultPredictions[i] = glPredict(paraUser, i);
+			paraPredictions[i] = glPredict(paraUser, i);
 		} // Of for i
-		return resultPredictions;
+		return paraPredictions;
 	}// Of predictForUser	
 	/**
 	 ************************ 
@@ -0,0 +1,345 @@
+package algorithm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Binary checkpoints of MF2DBoolean. A checkpoint stores the hyper-parameters,
+ * a fingerprint of the dataset, the number of rounds trained, why the training
+ * stopped, both subspaces and the accumulators of the adaptive schemes. It is
+ * written sequentially to a temporary file, which then replaces the
+ * checkpoint, so that an interrupted save leaves the previous checkpoint
+ * intact. It is loaded through a memory map. The model is changed
+ * only after the whole checkpoint has been validated and read. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class MFCheckpoint {
+	/**
+	 * The magic number, "MF2D" in ASCII.
+	 */
+	public static final int MAGIC = 0x4D463244;
+
+	/**
+	 * The version of the format.
+	 */
+	public static final int FORMAT_VERSION = 2;
+
+	/**
+	 * The number of bytes of the header before the stop reason.
+	 */
+	static final int HEADER_LENGTH = 72;
+
+	/**
+	 ************************
+	 * Save the model to a checkpoint file.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 * @param paraFilename
+	 *            The checkpoint file.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 ************************
+	 */
+	public static void save(MF2DBoolean paraModel, String paraFilename) throws IOException {
+		boolean tempHasOptimizerState = (paraModel.userSecondMoments != null)
+				&& (paraModel.userSecondMoments.length == paraModel.userSubspace.length
+						* paraModel.rank);
+		save(paraFilename, paraModel.dataset.computeFingerprint(), paraModel.regularScheme,
+				paraModel.alpha, paraModel.lambda, paraModel.subspaceValueRange,
+				paraModel.totalTrainedRounds, paraModel.converged, paraModel.stopReason,
+				paraModel.rank, paraModel.userSubspace, paraModel.itemSubspace,
+				tempHasOptimizerState ? paraModel : null);
+	}// Of save
+
+	/**
+	 ************************
+	 * Save subspaces to a checkpoint file. It is also used where no model
+	 * object is available, e.g., by the parameter server.
+	 *
+	 * @param paraFilename
+	 *            The checkpoint file.
+	 * @param paraFingerprint
+	 *            The fingerprint of the dataset.
+	 * @param paraRegularScheme
+	 *            The regular scheme.
+	 * @param paraAlpha
+	 *            The learning rate.
+	 * @param paraLambda
+	 *            The regular parameter.
+	 * @param paraSubspaceValueRange
+	 *            The range of initial values.
+	 * @param paraTrainedRounds
+	 *            How many rounds have been trained.
+	 * @param paraConverged
+	 *            Whether or not the training stopped on convergence.
+	 * @param paraStopReason
+	 *            Why the training stopped.
+	 * @param paraRank
+	 *            The rank of the subspaces.
+	 * @param paraUserSubspace
+	 *            The user subspace.
+	 * @param paraItemSubspace
+	 *            The item subspace.
+	 * @param paraOptimizerModel
+	 *            The model whose optimizer state is saved. null for no
+	 *            optimizer state.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 ************************
+	 */
+	public static void save(String paraFilename, long paraFingerprint, int paraRegularScheme,
+			double paraAlpha, double paraLambda, double paraSubspaceValueRange,
+			int paraTrainedRounds, boolean paraConverged, String paraStopReason, int paraRank,
+			double[][] paraUserSubspace, double[][] paraItemSubspace,
+			MF2DBoolean paraOptimizerModel) throws IOException {
+		byte[] tempReason = paraStopReason.getBytes("UTF-8");
+		int tempNumUsers = paraUserSubspace.length;
+		int tempNumItems = paraItemSubspace.length;
+		int tempRank = paraRank;
+
+		String tempTemporaryFilename = paraFilename + ".tmp";
+		FileOutputStream tempFileOutput = new FileOutputStream(tempTemporaryFilename);
+		DataOutputStream tempOutput = new DataOutputStream(
+				new BufferedOutputStream(tempFileOutput, 1 << 16));
+		boolean tempWritten = false;
+		try {
+			// Step 1. Header.
+			tempOutput.writeInt(MAGIC);
+			tempOutput.writeInt(FORMAT_VERSION);
+			tempOutput.writeLong(paraFingerprint);
+			tempOutput.writeInt(tempNumUsers);
+			tempOutput.writeInt(tempNumItems);
+			tempOutput.writeInt(tempRank);
+			tempOutput.writeInt(paraRegularScheme);
+			tempOutput.writeDouble(paraAlpha);
+			tempOutput.writeDouble(paraLambda);
+			tempOutput.writeDouble(paraSubspaceValueRange);
+			tempOutput.writeInt(paraTrainedRounds);
+			tempOutput.writeInt((paraOptimizerModel != null) ? 1 : 0);
+			tempOutput.writeInt(paraConverged ? 1 : 0);
+			tempOutput.writeInt(tempReason.length);
+			tempOutput.write(tempReason);
+
+			// Step 2. Subspaces.
+			for (int i = 0; i < tempNumUsers; i++) {
+				for (int j = 0; j < tempRank; j++) {
+					tempOutput.writeDouble(paraUserSubspace[i][j]);
+				} // Of for j
+			} // Of for i
+			for (int i = 0; i < tempNumItems; i++) {
+				for (int j = 0; j < tempRank; j++) {
+					tempOutput.writeDouble(paraItemSubspace[i][j]);
+				} // Of for j
+			} // Of for i
+
+			// Step 3. Optimizer state.
+			if (paraOptimizerModel != null) {
+				writeDoubles(tempOutput, paraOptimizerModel.userFirstMoments);
+				writeDoubles(tempOutput, paraOptimizerModel.userSecondMoments);
+				writeDoubles(tempOutput, paraOptimizerModel.itemFirstMoments);
+				writeDoubles(tempOutput, paraOptimizerModel.itemSecondMoments);
+				for (int i = 0; i < tempNumUsers; i++) {
+					tempOutput.writeInt(paraOptimizerModel.userUpdateCounts[i]);
+				} // Of for i
+				for (int i = 0; i < tempNumItems; i++) {
+					tempOutput.writeInt(paraOptimizerModel.itemUpdateCounts[i]);
+				} // Of for i
+			} // Of if
+
+			tempOutput.flush();
+			tempFileOutput.getFD().sync();
+			tempWritten = true;
+		} finally {
+			tempOutput.close();
+			if (!tempWritten) {
+				new File(tempTemporaryFilename).delete();
+			} // Of if
+		} // Of try
+
+		// Step 4. Replace the checkpoint.
+		Path tempSource = Paths.get(tempTemporaryFilename);
+		Path tempTarget = Paths.get(paraFilename);
+		try {
+			Files.move(tempSource, tempTarget, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ee) {
+			Files.move(tempSource, tempTarget, StandardCopyOption.REPLACE_EXISTING);
+		} // Of try
+	}// Of save
+
+	/**
+	 ************************
+	 * Write an array of doubles.
+	 ************************
+	 */
+	private static void writeDoubles(DataOutputStream paraOutput, double[] paraArray)
+			throws IOException {
+		for (int i = 0; i < paraArray.length; i++) {
+			paraOutput.writeDouble(paraArray[i]);
+		} // Of for i
+	}// Of writeDoubles
+
+	/**
+	 ************************
+	 * Load a checkpoint into the model. The checkpoint is accepted only if it
+	 * was produced on the same dataset with the same rank. Other
+	 * hyper-parameters are taken from the checkpoint.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 * @param paraFilename
+	 *            The checkpoint file.
+	 * @return True if loaded, false if the checkpoint does not match the
+	 *         dataset or the rank.
+	 * @throws IOException
+	 *             If the file cannot be read, is not a checkpoint, or is
+	 *             truncated.
+	 ************************
+	 */
+	public static boolean load(MF2DBoolean paraModel, String paraFilename) throws IOException {
+		return load(paraModel, paraFilename, false);
+	}// Of load
+
+	/**
+	 ************************
+	 * Load a checkpoint into the model. The model is unchanged unless true is
+	 * returned.
+	 *
+	 * @param paraModel
+	 *            The model.
+	 * @param paraFilename
+	 *            The checkpoint file.
+	 * @param paraSameParameters
+	 *            Also require the same regular scheme, alpha and lambda as
+	 *            the model. Otherwise they are taken from the checkpoint.
+	 * @return True if loaded, false if the checkpoint does not match.
+	 * @throws IOException
+	 *             If the file cannot be read, is not a checkpoint, or is
+	 *             truncated.
+	 ************************
+	 */
+	public static boolean load(MF2DBoolean paraModel, String paraFilename,
+			boolean paraSameParameters) throws IOException {
+		RandomAccessFile tempFile = new RandomAccessFile(paraFilename, "r");
+		try {
+			FileChannel tempChannel = tempFile.getChannel();
+			long tempFileLength = tempChannel.size();
+			if (tempFileLength < HEADER_LENGTH) {
+				throw new IOException("Error occurred in MFCheckpoint.load(): " + paraFilename
+						+ " is truncated.");
+			} // Of if
+			MappedByteBuffer tempBuffer = tempChannel.map(FileChannel.MapMode.READ_ONLY, 0,
+					tempFileLength);
+
+			// Step 1. Header.
+			if ((tempBuffer.getInt() != MAGIC) || (tempBuffer.getInt() != FORMAT_VERSION)) {
+				throw new IOException("Error occurred in MFCheckpoint.load(): " + paraFilename
+						+ " is not a checkpoint of the current format.");
+			} // Of if
+
+			long tempFingerprint = tempBuffer.getLong();
+			int tempNumUsers = tempBuffer.getInt();
+			int tempNumItems = tempBuffer.getInt();
+			int tempRank = tempBuffer.getInt();
+			if ((tempFingerprint != paraModel.dataset.computeFingerprint())
+					|| (tempNumUsers != paraModel.dataset.getNumUsers())
+					|| (tempNumItems != paraModel.dataset.getNumItems())
+					|| (tempRank != paraModel.rank)) {
+				return false;
+			} // Of if
+
+			int tempRegularScheme = tempBuffer.getInt();
+			double tempAlpha = tempBuffer.getDouble();
+			double tempLambda = tempBuffer.getDouble();
+			if (paraSameParameters && ((tempRegularScheme != paraModel.regularScheme)
+					|| (tempAlpha != paraModel.alpha) || (tempLambda != paraModel.lambda))) {
+				return false;
+			} // Of if
+			double tempSubspaceValueRange = tempBuffer.getDouble();
+			int tempTrainedRounds = tempBuffer.getInt();
+			boolean tempHasOptimizerState = (tempBuffer.getInt() == 1);
+			boolean tempConverged = (tempBuffer.getInt() == 1);
+			int tempReasonLength = tempBuffer.getInt();
+
+			// Step 2. Check the length before reading the rest.
+			long tempNumRows = (long) tempNumUsers + tempNumItems;
+			long tempExpectedLength = HEADER_LENGTH + (long) tempReasonLength
+					+ 8L * tempNumRows * tempRank;
+			if (tempHasOptimizerState) {
+				tempExpectedLength += 16L * tempNumRows * tempRank + 4L * tempNumRows;
+			} // Of if
+			if ((tempReasonLength < 0) || (tempFileLength != tempExpectedLength)) {
+				throw new IOException("Error occurred in MFCheckpoint.load(): " + paraFilename
+						+ " has " + tempFileLength + " bytes while " + tempExpectedLength
+						+ " are expected.");
+			} // Of if
+			byte[] tempReason = new byte[tempReasonLength];
+			tempBuffer.get(tempReason);
+
+			// Step 3. Subspaces, row by row in bulk.
+			DoubleBuffer tempDoubles = tempBuffer.asDoubleBuffer();
+			double[][] tempUserSubspace = new double[tempNumUsers][tempRank];
+			for (int i = 0; i < tempNumUsers; i++) {
+				tempDoubles.get(tempUserSubspace[i]);
+			} // Of for i
+			double[][] tempItemSubspace = new double[tempNumItems][tempRank];
+			for (int i = 0; i < tempNumItems; i++) {
+				tempDoubles.get(tempItemSubspace[i]);
+			} // Of for i
+
+			// Step 4. Optimizer state.
+			double[][] tempMoments = new double[4][];
+			int[] tempUserUpdateCounts = new int[tempNumUsers];
+			int[] tempItemUpdateCounts = new int[tempNumItems];
+			tempMoments[0] = new double[tempNumUsers * tempRank];
+			tempMoments[1] = new double[tempNumUsers * tempRank];
+			tempMoments[2] = new double[tempNumItems * tempRank];
+			tempMoments[3] = new double[tempNumItems * tempRank];
+			if (tempHasOptimizerState) {
+				for (int i = 0; i < tempMoments.length; i++) {
+					tempDoubles.get(tempMoments[i]);
+				} // Of for i
+
+				tempBuffer.position(tempBuffer.position() + tempDoubles.position() * 8);
+				IntBuffer tempInts = tempBuffer.asIntBuffer();
+				tempInts.get(tempUserUpdateCounts);
+				tempInts.get(tempItemUpdateCounts);
+			} // Of if
+
+			// Step 5. Everything is read, commit to the model.
+			paraModel.regularScheme = tempRegularScheme;
+			paraModel.alpha = tempAlpha;
+			paraModel.lambda = tempLambda;
+			paraModel.subspaceValueRange = tempSubspaceValueRange;
+			paraModel.totalTrainedRounds = tempTrainedRounds;
+			paraModel.converged = tempConverged;
+			paraModel.stopReason = new String(tempReason, "UTF-8");
+			paraModel.userSubspace = tempUserSubspace;
+			paraModel.itemSubspace = tempItemSubspace;
+			paraModel.userFirstMoments = tempMoments[0];
+			paraModel.userSecondMoments = tempMoments[1];
+			paraModel.itemFirstMoments = tempMoments[2];
+			paraModel.itemSecondMoments = tempMoments[3];
+			paraModel.userUpdateCounts = tempUserUpdateCounts;
+			paraModel.itemUpdateCounts = tempItemUpdateCounts;
+		} catch (BufferUnderflowException ee) {
+			throw new IOException("Error occurred in MFCheckpoint.load(): " + paraFilename
+					+ " is truncated.");
+		} finally {
+			tempFile.close();
+		} // Of try
+
+		return true;
+	}// Of load
+}// Of class MFCheckpoint
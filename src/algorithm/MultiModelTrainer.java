@@ -0,0 +1,324 @@
+package algorithm;
+
+import common.Common;
+import datamodel.*;
+
+/**
+ * Train several MF2DBoolean configurations (rank, alpha, lambda and regular
+ * scheme) in the same sweeps over the ratings, e.g., for parameter tuning.
+ * The subspaces of all models are interleaved: the vectors of one user (or
+ * item) for all models are stored contiguously, so that a rating is read
+ * once and all models are updated while their rows are in the cache. Each
+ * model is updated exactly as a stand-alone MF2DBoolean with the same visiting
+ * order. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class MultiModelTrainer {
+	/**
+	 * The dataset.
+	 */
+	RatingSystem2DBoolean dataset;
+
+	/**
+	 * The number of models.
+	 */
+	int numModels;
+
+	/**
+	 * The rank of each model.
+	 */
+	int[] ranks;
+
+	/**
+	 * The learning rate of each model.
+	 */
+	double[] alphas;
+
+	/**
+	 * The regular parameter of each model.
+	 */
+	double[] lambdas;
+
+	/**
+	 * The regular scheme of each model, NO_REGULAR or PQ_REGULAR.
+	 */
+	int[] regularSchemes;
+
+	/**
+	 * The offset of each model in an interleaved row. The last element is the
+	 * length of a row.
+	 */
+	int[] offsets;
+
+	/**
+	 * The user subspaces, row by row, each row holding the vectors of all
+	 * models.
+	 */
+	double[] userFactors;
+
+	/**
+	 * The item subspaces in the same layout.
+	 */
+	double[] itemFactors;
+
+	/**
+	 * The training loss of each model in the last round.
+	 */
+	double[] trainingLosses;
+
+	/**
+	 * The range for the initial values.
+	 */
+	double subspaceValueRange = 0.5;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraDataset
+	 *            The dataset.
+	 * @param paraRanks
+	 *            The rank of each model.
+	 * @param paraAlphas
+	 *            The learning rate of each model.
+	 * @param paraLambdas
+	 *            The regular parameter of each model.
+	 * @param paraRegularSchemes
+	 *            The regular scheme of each model.
+	 ************************
+	 */
+	public MultiModelTrainer(RatingSystem2DBoolean paraDataset, int[] paraRanks,
+			double[] paraAlphas, double[] paraLambdas, int[] paraRegularSchemes) {
+		numModels = paraRanks.length;
+		if ((paraAlphas.length != numModels) || (paraLambdas.length != numModels)
+				|| (paraRegularSchemes.length != numModels)) {
+			throw new IllegalArgumentException("Error occurred in MultiModelTrainer(): "
+					+ "the parameter arrays should have the same length.");
+		} // Of if
+		for (int i = 0; i < numModels; i++) {
+			if ((paraRegularSchemes[i] != MF2DBoolean.NO_REGULAR)
+					&& (paraRegularSchemes[i] != MF2DBoolean.PQ_REGULAR)) {
+				throw new IllegalArgumentException("Error occurred in MultiModelTrainer(): "
+						+ "unsupported regular scheme " + paraRegularSchemes[i]);
+			} // Of if
+		} // Of for i
+
+		dataset = paraDataset;
+		ranks = paraRanks;
+		alphas = paraAlphas;
+		lambdas = paraLambdas;
+		regularSchemes = paraRegularSchemes;
+
+		offsets = new int[numModels + 1];
+		for (int i = 0; i < numModels; i++) {
+			offsets[i + 1] = offsets[i] + ranks[i];
+		} // Of for i
+		trainingLosses = new double[numModels];
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Initialize subspaces. Each value is in [-paraRange, +paraRange].
+	 *
+	 * @param paraRange
+	 *            The range of the initial values.
+	 ************************
+	 */
+	public void initializeSubspaces(double paraRange) {
+		subspaceValueRange = paraRange;
+		int tempRowLength = offsets[numModels];
+		userFactors = new double[dataset.getNumUsers() * tempRowLength];
+		for (int i = 0; i < userFactors.length; i++) {
+			userFactors[i] = (Common.random.nextDouble() - 0.5) * 2 * paraRange;
+		} // Of for i
+		itemFactors = new double[dataset.getNumItems() * tempRowLength];
+		for (int i = 0; i < itemFactors.length; i++) {
+			itemFactors[i] = (Common.random.nextDouble() - 0.5) * 2 * paraRange;
+		} // Of for i
+	}// Of initializeSubspaces
+
+	/**
+	 ************************
+	 * Train all models.
+	 *
+	 * @param paraRounds
+	 *            The number of rounds.
+	 ************************
+	 */
+	public void train(int paraRounds) {
+		for (int i = 0; i < paraRounds; i++) {
+			update();
+			if (i % 50 == 0) {
+				System.out.println("Round " + i);
+			} // Of if
+		} // Of for i
+	}// Of train
+
+	/**
+	 ************************
+	 * One sweep over the training ratings, updating all models.
+	 ************************
+	 */
+	public void update() {
+		int tempRowLength = offsets[numModels];
+		double[] tempLossSums = new double[numModels];
+		int tempNumUpdates = 0;
+		Triple tempTriple;
+		for (int i = 0; i < dataset.getNumUsers(); i++) {
+			int tempUserBase = i * tempRowLength;
+			for (int j = 0; j < dataset.getUserNumRatings(i); j++) {
+				// Ignore the testing set.
+				if (!dataset.getTrainIndication(i, j)) {
+					continue;
+				} // Of if
+
+				tempTriple = dataset.getTriple(i, j);
+				int tempItemBase = tempTriple.item * tempRowLength;
+				tempNumUpdates++;
+				for (int m = 0; m < numModels; m++) {
+					int tempUserStart = tempUserBase + offsets[m];
+					int tempItemStart = tempItemBase + offsets[m];
+					int tempRank = ranks[m];
+					double tempAlpha = alphas[m];
+					double tempLambda = (regularSchemes[m] == MF2DBoolean.PQ_REGULAR) ? lambdas[m]
+							: 0;
+
+					double tempPrediction = 0;
+					for (int k = 0; k < tempRank; k++) {
+						tempPrediction += userFactors[tempUserStart + k]
+								* itemFactors[tempItemStart + k];
+					} // Of for k
+					double tempResidual = tempTriple.rating - tempPrediction;
+					tempLossSums[m] += tempResidual * tempResidual;
+
+					// The user first, and then the item with the new user vector.
+					for (int k = 0; k < tempRank; k++) {
+						userFactors[tempUserStart + k] += tempAlpha
+								* (2 * tempResidual * itemFactors[tempItemStart + k]
+										- tempLambda * userFactors[tempUserStart + k]);
+					} // Of for k
+					for (int k = 0; k < tempRank; k++) {
+						itemFactors[tempItemStart + k] += tempAlpha
+								* (2 * tempResidual * userFactors[tempUserStart + k]
+										- tempLambda * itemFactors[tempItemStart + k]);
+					} // Of for k
+				} // Of for m
+			} // Of for j
+		} // Of for i
+
+		for (int m = 0; m < numModels; m++) {
+			trainingLosses[m] = tempLossSums[m] / Math.max(tempNumUpdates, 1);
+		} // Of for m
+	}// Of update
+
+	/**
+	 ************************
+	 * Getter.
+	 *
+	 * @param paraModel
+	 *            The index of the model.
+	 ************************
+	 */
+	public double getTrainingLoss(int paraModel) {
+		return trainingLosses[paraModel];
+	}// Of getTrainingLoss
+
+	/**
+	 ************************
+	 * Export a model as a stand-alone MF2DBoolean on the same dataset.
+	 *
+	 * @param paraModel
+	 *            The index of the model.
+	 * @param paraTrainRounds
+	 *            The train rounds recorded in the exported model.
+	 * @return The model.
+	 ************************
+	 */
+	public MF2DBoolean exportModel(int paraModel, int paraTrainRounds) {
+		MF2DBoolean resultModel = new MF2DBoolean(dataset);
+		resultModel.setParameters(ranks[paraModel], alphas[paraModel], lambdas[paraModel],
+				regularSchemes[paraModel], paraTrainRounds);
+		resultModel.subspaceValueRange = subspaceValueRange;
+
+		int tempRowLength = offsets[numModels];
+		int tempRank = ranks[paraModel];
+		resultModel.userSubspace = new double[dataset.getNumUsers()][tempRank];
+		for (int i = 0; i < dataset.getNumUsers(); i++) {
+			System.arraycopy(userFactors, i * tempRowLength + offsets[paraModel],
+					resultModel.userSubspace[i], 0, tempRank);
+		} // Of for i
+		resultModel.itemSubspace = new double[dataset.getNumItems()][tempRank];
+		for (int i = 0; i < dataset.getNumItems(); i++) {
+			System.arraycopy(itemFactors, i * tempRowLength + offsets[paraModel],
+					resultModel.itemSubspace[i], 0, tempRank);
+		} // Of for i
+		resultModel.initializeOptimizerState();
+		resultModel.totalTrainedRounds = paraTrainRounds;
+
+		return resultModel;
+	}// Of exportModel
+
+	/**
+	 ************************
+	 * Sweep some configurations on MovieLens and compare with separate
+	 * training.
+	 ************************
+	 */
+	public static void testMultiModel(int paraRounds) {
+		try {
+			RatingSystem2DBoolean tempDataset = new RatingSystem2DBoolean(
+					"data/movielens943u1682m.txt", 943, 1682, 100000, 1, 5, 3.5, true);
+			tempDataset.initializeTraining(0.8);
+
+			int[] tempRanks = { 5, 10, 10, 20 };
+			double[] tempAlphas = { 0.0001, 0.0001, 0.0002, 0.0001 };
+			double[] tempLambdas = { 0.005, 0.005, 0.01, 0.005 };
+			int[] tempSchemes = { MF2DBoolean.PQ_REGULAR, MF2DBoolean.PQ_REGULAR,
+					MF2DBoolean.PQ_REGULAR, MF2DBoolean.NO_REGULAR };
+
+			long tempStart = System.currentTimeMillis();
+			MultiModelTrainer tempTrainer = new MultiModelTrainer(tempDataset, tempRanks,
+					tempAlphas, tempLambdas, tempSchemes);
+			tempTrainer.initializeSubspaces(0.5);
+			tempTrainer.train(paraRounds);
+			System.out.println("Fused training of " + tempRanks.length + " models takes "
+					+ (System.currentTimeMillis() - tempStart) + " ms.");
+			MF2DBoolean tempModel;
+			for (int i = 0; i < tempRanks.length; i++) {
+				tempModel = tempTrainer.exportModel(i, paraRounds);
+				System.out.println("Model " + i + ": " + tempModel.getParameters() + ", "
+						+ tempModel.evaluate());
+			} // Of for i
+
+			tempStart = System.currentTimeMillis();
+			for (int i = 0; i < tempRanks.length; i++) {
+				MF2DBoolean tempLearner = new MF2DBoolean(tempDataset);
+				tempLearner.setParameters(tempRanks[i], tempAlphas[i], tempLambdas[i],
+						tempSchemes[i], paraRounds);
+				tempLearner.initializeSubspaces(0.5);
+				tempLearner.train();
+			} // Of for i
+			System.out.println("Separate training of " + tempRanks.length + " models takes "
+					+ (System.currentTimeMillis() - tempStart) + " ms.");
+		} catch (Exception ee) {
+			ee.printStackTrace();
+		} // Of try
+	}// Of testMultiModel
+
+	/**
+	 ************************
+	 * @param args
+	 ************************
+	 */
+	public static void main(String args[]) {
+		testMultiModel(200);
+	}// Of main
+}// Of class MultiModelTrainer
@@ -0,0 +1,472 @@
+package algorithm;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * The parameter server of distributed training. It holds the item subspace,
+ * serves pulls of the whole subspace and pushes of deltas of touched items.
+ * Bounded staleness is enforced: a worker may pull for clock c only if every
+ * worker has pushed at least c - staleness clocks. Each worker is served by a
+ * thread of its own. If a worker disconnects before reporting its shard, the
+ * run fails: pending and future pulls are refused, so that the other workers
+ * do not wait for its clock forever. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ParameterServer {
+	/**
+	 * Request to pull the item subspace.
+	 */
+	public static final int OP_PULL = 1;
+
+	/**
+	 * Request to push deltas of the item subspace.
+	 */
+	public static final int OP_PUSH = 2;
+
+	/**
+	 * Report the user subspace of the shard and finish.
+	 */
+	public static final int OP_DONE = 3;
+
+	/**
+	 * The number of workers.
+	 */
+	int numWorkers;
+
+	/**
+	 * The number of items.
+	 */
+	int numItems;
+
+	/**
+	 * The rank.
+	 */
+	int rank;
+
+	/**
+	 * The maximal number of clocks a worker may be ahead of the slowest one.
+	 */
+	int staleness;
+
+	/**
+	 * The item subspace, row by row.
+	 */
+	double[] itemFactors;
+
+	/**
+	 * The number of users, known after workers report.
+	 */
+	int numUsers;
+
+	/**
+	 * The user subspace collected from workers.
+	 */
+	double[][] userSubspace;
+
+	/**
+	 * The fingerprint of the dataset reported by the first worker.
+	 */
+	long fingerprint;
+
+	/**
+	 * Has any worker reported the fingerprint?
+	 */
+	boolean fingerprintReported;
+
+	/**
+	 * How many clocks each worker has pushed.
+	 */
+	int[] workerClocks;
+
+	/**
+	 * How many updates each worker has done.
+	 */
+	long[] workerUpdates;
+
+	/**
+	 * The computing time of each worker in nanoseconds.
+	 */
+	long[] workerComputeNanos;
+
+	/**
+	 * The time each worker waited for the staleness bound in nanoseconds.
+	 */
+	long[] workerWaitNanos;
+
+	/**
+	 * The sum of squared residuals of each clock.
+	 */
+	double[] clockLossSums;
+
+	/**
+	 * The number of updates of each clock.
+	 */
+	long[] clockUpdates;
+
+	/**
+	 * The number of workers finished.
+	 */
+	int numFinished;
+
+	/**
+	 * The first worker which disconnected before OP_DONE, -1 if none. A
+	 * worker failed before saying hello is reported as numWorkers.
+	 */
+	int failedWorker = -1;
+
+	/**
+	 * The server socket.
+	 */
+	ServerSocket serverSocket;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraNumWorkers
+	 *            The number of workers.
+	 * @param paraNumItems
+	 *            The number of items.
+	 * @param paraRank
+	 *            The rank.
+	 * @param paraRounds
+	 *            The number of rounds (clocks).
+	 * @param paraStaleness
+	 *            The staleness bound.
+	 * @param paraRange
+	 *            The range of the initial values.
+	 * @param paraSeed
+	 *            The seed for initialization.
+	 ************************
+	 */
+	public ParameterServer(int paraNumWorkers, int paraNumItems, int paraRank, int paraRounds,
+			int paraStaleness, double paraRange, long paraSeed) {
+		numWorkers = paraNumWorkers;
+		numItems = paraNumItems;
+		rank = paraRank;
+		staleness = paraStaleness;
+
+		Random tempRandom = new Random(paraSeed);
+		itemFactors = new double[numItems * rank];
+		for (int i = 0; i < itemFactors.length; i++) {
+			itemFactors[i] = (tempRandom.nextDouble() - 0.5) * 2 * paraRange;
+		} // Of for i
+
+		workerClocks = new int[numWorkers];
+		workerUpdates = new long[numWorkers];
+		workerComputeNanos = new long[numWorkers];
+		workerWaitNanos = new long[numWorkers];
+		clockLossSums = new double[paraRounds];
+		clockUpdates = new long[paraRounds];
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Start listening and serving in background threads.
+	 *
+	 * @param paraPort
+	 *            The port, 0 for any free port.
+	 * @return The actual port.
+	 * @throws IOException
+	 *             If the port cannot be bound.
+	 ************************
+	 */
+	public int start(int paraPort) throws IOException {
+		serverSocket = new ServerSocket(paraPort, numWorkers, InetAddress.getLoopbackAddress());
+		Thread tempAcceptThread = new Thread("ParameterServer-accept") {
+			public void run() {
+				for (int i = 0; i < numWorkers; i++) {
+					try {
+						final Socket tempSocket = serverSocket.accept();
+						new Thread("ParameterServer-worker") {
+							public void run() {
+								serve(tempSocket);
+							}// Of run
+						}.start();
+					} catch (IOException ee) {
+						System.out.println("Error occurred in ParameterServer.start(): " + ee);
+						return;
+					} // Of try
+				} // Of for i
+			}// Of run
+		};
+		tempAcceptThread.setDaemon(true);
+		tempAcceptThread.start();
+
+		return serverSocket.getLocalPort();
+	}// Of start
+
+	/**
+	 ************************
+	 * Serve one worker until it finishes.
+	 *
+	 * @param paraSocket
+	 *            The connection.
+	 ************************
+	 */
+	void serve(Socket paraSocket) {
+		int tempWorker = -1;
+		boolean tempDone = false;
+		try {
+			paraSocket.setTcpNoDelay(true);
+			DataInputStream tempInput = new DataInputStream(
+					new BufferedInputStream(paraSocket.getInputStream(), 1 << 16));
+			DataOutputStream tempOutput = new DataOutputStream(
+					new BufferedOutputStream(paraSocket.getOutputStream(), 1 << 16));
+
+			// Step 1. Hello.
+			tempWorker = tempInput.readInt();
+			long tempFingerprint = tempInput.readLong();
+			synchronized (this) {
+				// Different fingerprints mean different files or arguments.
+				if (!fingerprintReported) {
+					fingerprint = tempFingerprint;
+					fingerprintReported = true;
+				} else if (tempFingerprint != fingerprint) {
+					throw new IOException("Worker #" + tempWorker + " reports fingerprint "
+							+ tempFingerprint + " instead of " + fingerprint + ".");
+				} // Of if
+			} // Of synchronized
+			tempOutput.writeInt(numItems);
+			tempOutput.writeInt(rank);
+			tempOutput.flush();
+
+			// Step 2. Requests.
+			double[] tempRow = new double[rank];
+			double[] tempSnapshot = new double[itemFactors.length];
+			while (true) {
+				int tempOperation = tempInput.readInt();
+				if (tempOperation == OP_PULL) {
+					int tempClock = tempInput.readInt();
+					long tempStart = System.nanoTime();
+					synchronized (this) {
+						while ((failedWorker < 0) && (minClock() < tempClock - staleness)) {
+							wait();
+						} // Of while
+						if (failedWorker >= 0) {
+							throw new IOException("Worker #" + failedWorker + " has failed.");
+						} // Of if
+						workerWaitNanos[tempWorker] += System.nanoTime() - tempStart;
+						System.arraycopy(itemFactors, 0, tempSnapshot, 0, itemFactors.length);
+					} // Of synchronized
+					writeDoubles(tempOutput, tempSnapshot);
+					tempOutput.flush();
+				} else if (tempOperation == OP_PUSH) {
+					int tempNumTouched = tempInput.readInt();
+					for (int i = 0; i < tempNumTouched; i++) {
+						int tempItem = tempInput.readInt();
+						readDoubles(tempInput, tempRow);
+						synchronized (this) {
+							for (int j = 0; j < rank; j++) {
+								itemFactors[tempItem * rank + j] += tempRow[j];
+							} // Of for j
+						} // Of synchronized
+					} // Of for i
+					long tempUpdates = tempInput.readLong();
+					long tempNanos = tempInput.readLong();
+					double tempLossSum = tempInput.readDouble();
+					finishClock(tempWorker, tempUpdates, tempNanos, tempLossSum);
+				} else if (tempOperation == OP_DONE) {
+					receiveUsers(tempInput);
+					tempDone = true;
+					break;
+				} else {
+					throw new IOException("Unknown operation " + tempOperation);
+				} // Of if
+			} // Of while
+		} catch (Exception ee) {
+			System.out.println("Error occurred in ParameterServer.serve() for worker #"
+					+ tempWorker + ": " + ee);
+		} // Of try
+
+		// Closing the connection also stops a worker waiting for a refused
+		// pull.
+		try {
+			paraSocket.close();
+		} catch (IOException ee) {
+			// Nothing more can be done.
+		} // Of try
+
+		synchronized (this) {
+			if (!tempDone && (failedWorker < 0)) {
+				failedWorker = (tempWorker >= 0) ? tempWorker : numWorkers;
+			} // Of if
+			numFinished++;
+			notifyAll();
+		} // Of synchronized
+	}// Of serve
+
+	/**
+	 ************************
+	 * Write an array of doubles in bulk.
+	 *
+	 * @param paraOutput
+	 *            The output stream.
+	 * @param paraArray
+	 *            The array.
+	 ************************
+	 */
+	static void writeDoubles(DataOutputStream paraOutput, double[] paraArray)
+			throws IOException {
+		ByteBuffer tempBuffer = ByteBuffer.allocate(paraArray.length * 8);
+		tempBuffer.asDoubleBuffer().put(paraArray);
+		paraOutput.write(tempBuffer.array());
+	}// Of writeDoubles
+
+	/**
+	 ************************
+	 * Read an array of doubles in bulk.
+	 *
+	 * @param paraInput
+	 *            The input stream.
+	 * @param paraArray
+	 *            The array to fill.
+	 ************************
+	 */
+	static void readDoubles(DataInputStream paraInput, double[] paraArray) throws IOException {
+		byte[] tempBytes = new byte[paraArray.length * 8];
+		paraInput.readFully(tempBytes);
+		ByteBuffer.wrap(tempBytes).asDoubleBuffer().get(paraArray);
+	}// Of readDoubles
+
+	/**
+	 ************************
+	 * The minimal clock among workers.
+	 ************************
+	 */
+	int minClock() {
+		int resultClock = workerClocks[0];
+		for (int i = 1; i < numWorkers; i++) {
+			if (resultClock > workerClocks[i]) {
+				resultClock = workerClocks[i];
+			} // Of if
+		} // Of for i
+		return resultClock;
+	}// Of minClock
+
+	/**
+	 ************************
+	 * A worker has pushed a clock. Show the loss if it is the last one of the
+	 * clock.
+	 ************************
+	 */
+	synchronized void finishClock(int paraWorker, long paraUpdates, long paraNanos,
+			double paraLossSum) {
+		int tempClock = workerClocks[paraWorker];
+		workerUpdates[paraWorker] += paraUpdates;
+		workerComputeNanos[paraWorker] += paraNanos;
+		if (tempClock < clockLossSums.length) {
+			clockLossSums[tempClock] += paraLossSum;
+			clockUpdates[tempClock] += paraUpdates;
+		} // Of if
+
+		workerClocks[paraWorker]++;
+		if (minClock() == tempClock + 1) {
+			System.out.println("Round " + tempClock + ", training loss = "
+					+ clockLossSums[tempClock] / Math.max(clockUpdates[tempClock], 1));
+		} // Of if
+		notifyAll();
+	}// Of finishClock
+
+	/**
+	 ************************
+	 * Receive the user subspace of a shard.
+	 ************************
+	 */
+	void receiveUsers(DataInputStream paraInput) throws IOException {
+		int tempNumUsers = paraInput.readInt();
+		int tempNumOwned = paraInput.readInt();
+		synchronized (this) {
+			if (userSubspace == null) {
+				numUsers = tempNumUsers;
+				userSubspace = new double[numUsers][rank];
+			} // Of if
+		} // Of synchronized
+
+		for (int i = 0; i < tempNumOwned; i++) {
+			int tempUser = paraInput.readInt();
+			readDoubles(paraInput, userSubspace[tempUser]);
+		} // Of for i
+	}// Of receiveUsers
+
+	/**
+	 ************************
+	 * Has any worker failed?
+	 ************************
+	 */
+	public synchronized boolean hasFailed() {
+		return failedWorker >= 0;
+	}// Of hasFailed
+
+	/**
+	 ************************
+	 * Wait for all workers to finish.
+	 *
+	 * @throws IOException
+	 *             If a worker has failed.
+	 ************************
+	 */
+	public synchronized void awaitCompletion() throws InterruptedException, IOException {
+		while ((numFinished < numWorkers) && (failedWorker < 0)) {
+			wait();
+		} // Of while
+		if (failedWorker >= 0) {
+			throw new IOException("Error occurred in ParameterServer.awaitCompletion(): worker #"
+					+ failedWorker + " has failed.");
+		} // Of if
+	}// Of awaitCompletion
+
+	/**
+	 ************************
+	 * Show the throughput of each worker.
+	 ************************
+	 */
+	public synchronized String getThroughputReport() {
+		String resultString = "";
+		long tempTotalUpdates = 0;
+		double tempTotalThroughput = 0;
+		for (int i = 0; i < numWorkers; i++) {
+			double tempComputeSeconds = workerComputeNanos[i] / 1e9;
+			double tempThroughput = workerUpdates[i] / Math.max(tempComputeSeconds, 1e-9);
+			resultString += "Worker #" + i + ": " + workerUpdates[i] + " updates in "
+					+ tempComputeSeconds + " s, " + (long) tempThroughput
+					+ " updates/s, waited " + (workerWaitNanos[i] / 1e9) + " s.\r\n";
+			tempTotalUpdates += workerUpdates[i];
+			tempTotalThroughput += tempThroughput;
+		} // Of for i
+		resultString += "Total: " + tempTotalUpdates + " updates, " + (long) tempTotalThroughput
+				+ " updates/s.";
+		return resultString;
+	}// Of getThroughputReport
+
+	/**
+	 ************************
+	 * Save the collected model as a checkpoint, which can be loaded by
+	 * MF2DBoolean.
+	 *
+	 * @see MFCheckpoint#load(MF2DBoolean, String)
+	 ************************
+	 */
+	public synchronized void saveCheckpoint(String paraFilename, int paraRegularScheme,
+			double paraAlpha, double paraLambda, double paraRange) throws IOException {
+		double[][] tempItemSubspace = new double[numItems][rank];
+		for (int i = 0; i < numItems; i++) {
+			System.arraycopy(itemFactors, i * rank, tempItemSubspace[i], 0, rank);
+		} // Of for i
+
+		MFCheckpoint.save(paraFilename, fingerprint, paraRegularScheme, paraAlpha, paraLambda,
+				paraRange, minClock(), false, "Distributed training.", rank, userSubspace,
+				tempItemSubspace, null);
+	}// Of saveCheckpoint
+}// Of class ParameterServer
@@ -68,6 +68,18 @@ public class PopularityBasedRecommendation extends UserBasedThreeWayRecommender
 	 */
 	private int[] semiPopularItems;
 
+	/**
+	 * The reservoirs sampling the popular however not recommended items and
+	 * the semi-popular however unpromoted items.
+	 */
+	private ReservoirBandCollector bandCollector = new ReservoirBandCollector(
+			SimpleTools.random);
+
+	/**
+	 * The result holder reused by recommendForUser(int).
+	 */
+	private int[][] resultHolder = new int[2][];
+
 	/**
 	 ************************ 
 	 * The second constructor.
@@ -198,11 +210,11 @@ public class PopularityBasedRecommendation extends UserBasedThreeWayRecommender
 		double tempMaturity = 0;
 		while ((tempMaturity < maturityThreshold)) {
 			// Step 2.1 Three-way recommend.
-			tempRecommendPromote = threeWayRecommend(paraUser);
+			tempRecommendPromote = threeWayRecommend(paraUser, resultHolder);
 
 			if (tempRecommendPromote == null) {
 				break;
-			} else {
+			} else if (SimpleTools.processTracking) {
 				SimpleTools.processTrackingOutput("popularity recommendation/promotion for user "
 						+ paraUser + ": " + Arrays.deepToString(tempRecommendPromote));
 			} // Of if
@@ -231,61 +243,73 @@ public class PopularityBasedRecommendation extends UserBasedThreeWayRecommender
 	 *********************************** 
 	 */
 	public int[][] threeWayRecommend(int paraUser) {
+		return threeWayRecommend(paraUser, new int[2][]);
+	}// Of threeWayRecommend
+
+	/**
+	 *********************************** 
+	 * Pop-based recommendation with the scratch buffers of this object, so that
+	 * nothing is allocated in the steady state.
+	 * 
+	 * @param paraUser
+	 *            The given user.
+	 * @param paraResult
+	 *            The result holder with two rows. A row is allocated only if
+	 *            its length does not fit.
+	 * @return The result holder, or null if there are no enough candidates.
+	 *********************************** 
+	 */
+	public int[][] threeWayRecommend(int paraUser, int[][] paraResult) {
+		if ((paraResult[0] == null) || (paraResult[0].length != numRecommend)) {
+			paraResult[0] = new int[numRecommend];
+		} // Of if
+		if ((paraResult[1] == null) || (paraResult[1].length != numPromote)) {
+			paraResult[1] = new int[numPromote];
+		} // Of if
 
-		// Step 1. Find popular however not recommended items.
-		int[] tempPopularUnrecommendedItems = new int[popularItems.length];
-		int tempCounter = 0;
+		// Step 1. Randomly select some popular however not recommended items
+		// in one pass.
+		ReservoirBandCollector tempCollector = bandCollector;
+		tempCollector.reset(numRecommend, numPromote);
 		for (int i = 0; i < popularItems.length; i++) {
-			if (currentUserRecommendations[popularItems[i]]) {
-				continue;
+			if (!currentUserRecommendations[popularItems[i]]) {
+				tempCollector.addRecommendation(popularItems[i]);
 			} // Of if
-
-			tempPopularUnrecommendedItems[tempCounter] = popularItems[i];
-			tempCounter++;
 		} // Of for i
 
-		if (numRecommend > tempCounter) {
+		if (numRecommend > tempCollector.getNumRecommendationsSeen()) {
 			SimpleTools.processTrackingOutput("No enough to recommend.");
 			return null;
 		} // Of if
 
-		// Step 2. Randomly select some to recommend.
-		int[] tempRecommendations = SimpleTools.randomSelectFromArray(tempPopularUnrecommendedItems,
-				tempCounter, numRecommend);
+		// Step 2. Recommend them.
+		int[] tempRecommendations = paraResult[0];
+		System.arraycopy(tempCollector.getRecommendations(), 0, tempRecommendations, 0,
+				numRecommend);
 		for (int i = 0; i < tempRecommendations.length; i++) {
 			currentUserRecommendations[tempRecommendations[i]] = true;
 		} // Of for i
 
-		// Step 3. Find semi-popular however unpromoted items.
-		int[] tempSemiPopularUnpromotedItems = new int[semiPopularItems.length];
-		tempCounter = 0;
+		// Step 3. Randomly select some semi-popular however unpromoted items.
 		for (int i = 0; i < semiPopularItems.length; i++) {
-			if (currentUserPromotions[semiPopularItems[i]]) {
-				continue;
+			if (!currentUserPromotions[semiPopularItems[i]]) {
+				tempCollector.addPromotion(semiPopularItems[i]);
 			} // Of if
-
-			tempSemiPopularUnpromotedItems[tempCounter] = semiPopularItems[i];
-			tempCounter++;
 		} // Of for i
 
-		if (numPromote > tempCounter) {
+		if (numPromote > tempCollector.getNumPromotionsSeen()) {
 			SimpleTools.processTrackingOutput("No enough to promote.");
 			return null;
 		} // Of if
 
-		// Step 4. Randomly select some to promote
-		int[] tempPromotions = SimpleTools.randomSelectFromArray(tempSemiPopularUnpromotedItems,
-				tempCounter, numPromote);
+		// Step 4. Promote them.
+		int[] tempPromotions = paraResult[1];
+		System.arraycopy(tempCollector.getPromotions(), 0, tempPromotions, 0, numPromote);
 		for (int i = 0; i < tempPromotions.length; i++) {
 			currentUserPromotions[tempPromotions[i]] = true;
 		} // Of for i
 
-		// Step 5. Construct the lists.
-		int[][] resultArrays = new int[2][];
-		resultArrays[0] = tempRecommendations;
-		resultArrays[1] = tempPromotions;
-
-		return resultArrays;
+		return paraResult;
 	}// Of threeWayRecommend
 
 	/**
@@ -0,0 +1,227 @@
+package algorithm;
+
+/**
+ * Item vectors quantized to 8 bits with a scale for each item, for the band
+ * queries of ItemScorer. The user vector is quantized the same way, and the
+ * approximate score of an item is the integer inner product times the two
+ * scales. Its error is bounded by |u|_1 e_v + e_u |v'|_1, where e_v and e_u
+ * are the largest quantization errors of the item and the user, and v' is the
+ * quantized item vector. An item is put into a band directly if the whole
+ * error interval falls in it, and only the items near a boundary are rescored
+ * with the double-precision vectors. The bands are hence exactly those of
+ * the linear scan. The scan reads rank + 12 bytes per item (the 8-bit vector
+ * and three floats) instead of 8 rank bytes. The double-precision packed copy
+ * is still kept for rescoring, hence the total memory grows. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class QuantizedItemFactors {
+	/**
+	 * The largest absolute value of a quantized element.
+	 */
+	public static final int QUANTIZATION_LEVELS = 127;
+
+	/**
+	 * The scorer providing the double-precision vectors.
+	 */
+	ItemScorer scorer;
+
+	/**
+	 * The quantized item vectors, item by item.
+	 */
+	byte[] factors;
+
+	/**
+	 * The scale of each item.
+	 */
+	float[] scales;
+
+	/**
+	 * The largest quantization error of each item, rounded up.
+	 */
+	float[] errors;
+
+	/**
+	 * The L1 norm of each quantized item vector, rounded up.
+	 */
+	float[] norms;
+
+	/**
+	 * The pack count of the scorer for the quantized copy.
+	 */
+	int quantizedPackCount = -1;
+
+	/**
+	 * The quantized user vector.
+	 */
+	int[] userFactors;
+
+	/**
+	 * The number of items rescored in the last query.
+	 */
+	int lastNumRescored;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraScorer
+	 *            The scorer.
+	 ************************
+	 */
+	public QuantizedItemFactors(ItemScorer paraScorer) {
+		scorer = paraScorer;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Quantize the packed vectors of the scorer if they have changed.
+	 ************************
+	 */
+	void refresh() {
+		scorer.refresh();
+		if (quantizedPackCount == scorer.packCount) {
+			return;
+		} // Of if
+
+		int tempNumItems = scorer.numItems;
+		int tempRank = scorer.packedRank;
+		double[] tempPacked = scorer.packedFactors;
+		if ((factors == null) || (factors.length != tempNumItems * tempRank)) {
+			factors = new byte[tempNumItems * tempRank];
+			scales = new float[tempNumItems];
+			errors = new float[tempNumItems];
+			norms = new float[tempNumItems];
+		} // Of if
+		if ((userFactors == null) || (userFactors.length != tempRank)) {
+			userFactors = new int[tempRank];
+		} // Of if
+
+		for (int i = 0; i < tempNumItems; i++) {
+			int tempOffset = i * tempRank;
+			double tempMax = 0;
+			for (int k = 0; k < tempRank; k++) {
+				tempMax = Math.max(tempMax, Math.abs(tempPacked[tempOffset + k]));
+			} // Of for k
+			float tempScale = (tempMax > 0) ? (float) (tempMax / QUANTIZATION_LEVELS) : 1;
+
+			double tempError = 0;
+			double tempNorm = 0;
+			for (int k = 0; k < tempRank; k++) {
+				double tempValue = tempPacked[tempOffset + k];
+				long tempLevel = Math.round(tempValue / tempScale);
+				tempLevel = Math.max(-QUANTIZATION_LEVELS,
+						Math.min(QUANTIZATION_LEVELS, tempLevel));
+				factors[tempOffset + k] = (byte) tempLevel;
+				tempError = Math.max(tempError, Math.abs(tempValue - tempLevel * tempScale));
+				tempNorm += Math.abs(tempLevel) * (double) tempScale;
+			} // Of for k
+			scales[i] = tempScale;
+			errors[i] = Math.nextUp((float) tempError);
+			norms[i] = Math.nextUp((float) tempNorm);
+		} // Of for i
+
+		quantizedPackCount = scorer.packCount;
+	}// Of refresh
+
+	/**
+	 ************************
+	 * Put the eligible items of the user into the bands, as
+	 * ItemScorer.scoreIntoBands(), with quantized scores. The candidates are
+	 * in the ascending order of items.
+	 *
+	 * @param paraUser
+	 *            The user.
+	 * @param paraExcluded
+	 *            The excluded items, null for none.
+	 * @param paraRecommendThreshold
+	 *            The threshold of the recommendation band.
+	 * @param paraPromoteThreshold
+	 *            The threshold of the promotion band.
+	 * @param paraCollector
+	 *            Receives the items of the bands.
+	 ************************
+	 */
+	public void scoreIntoBands(int paraUser, long[] paraExcluded, double paraRecommendThreshold,
+			double paraPromoteThreshold, BandCollector paraCollector) {
+		refresh();
+		int tempRank = scorer.packedRank;
+		double[] tempPacked = scorer.packedFactors;
+		double[] tempUserVector = scorer.model.userSubspace[paraUser];
+
+		// Step 1. Quantize the user vector.
+		double tempMax = 0;
+		double tempUserL1 = 0;
+		for (int k = 0; k < tempRank; k++) {
+			tempMax = Math.max(tempMax, Math.abs(tempUserVector[k]));
+			tempUserL1 += Math.abs(tempUserVector[k]);
+		} // Of for k
+		double tempUserScale = (tempMax > 0) ? tempMax / QUANTIZATION_LEVELS : 1;
+		double tempUserError = 0;
+		for (int k = 0; k < tempRank; k++) {
+			long tempLevel = Math.round(tempUserVector[k] / tempUserScale);
+			tempLevel = Math.max(-QUANTIZATION_LEVELS, Math.min(QUANTIZATION_LEVELS, tempLevel));
+			userFactors[k] = (int) tempLevel;
+			tempUserError = Math.max(tempUserError,
+					Math.abs(tempUserVector[k] - tempLevel * tempUserScale));
+		} // Of for k
+		// Some slack for the rounding of the floating point operations.
+		tempUserL1 *= 1 + 1e-9;
+		tempUserError = tempUserError * (1 + 1e-9) + 1e-12;
+
+		// Step 2. Classify with the quantized scores.
+		int tempNumWords = (scorer.numItems + 63) >>> 6;
+		int tempNumRescored = 0;
+		for (int w = 0; w < tempNumWords; w++) {
+			long tempBits = scorer.eligibleBits(paraExcluded, w);
+			while (tempBits != 0) {
+				int tempItem = (w << 6) + Long.numberOfTrailingZeros(tempBits);
+				tempBits &= tempBits - 1;
+
+				int tempOffset = tempItem * tempRank;
+				int tempDot = 0;
+				for (int k = 0; k < tempRank; k++) {
+					tempDot += userFactors[k] * factors[tempOffset + k];
+				} // Of for k
+				double tempScore = tempDot * tempUserScale * scales[tempItem];
+				double tempBound = tempUserL1 * errors[tempItem] + tempUserError * norms[tempItem];
+
+				// Near a boundary, rescore exactly.
+				if (((tempScore - tempBound < paraRecommendThreshold)
+						&& (tempScore + tempBound >= paraRecommendThreshold))
+						|| ((tempScore - tempBound < paraPromoteThreshold)
+								&& (tempScore + tempBound >= paraPromoteThreshold))) {
+					tempScore = 0;
+					for (int k = 0; k < tempRank; k++) {
+						tempScore += tempUserVector[k] * tempPacked[tempOffset + k];
+					} // Of for k
+					tempNumRescored++;
+				} // Of if
+
+				if (tempScore >= paraRecommendThreshold) {
+					paraCollector.addRecommendation(tempItem);
+				} else if (tempScore >= paraPromoteThreshold) {
+					paraCollector.addPromotion(tempItem);
+				} // Of if
+			} // Of while
+		} // Of for w
+
+		lastNumRescored = tempNumRescored;
+	}// Of scoreIntoBands
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getLastNumRescored() {
+		return lastNumRescored;
+	}// Of getLastNumRescored
+}// Of class QuantizedItemFactors
@@ -0,0 +1,246 @@
+package algorithm;
+
+import java.util.Random;
+
+import Jama.*;
+import common.ParallelTools;
+import datamodel.*;
+
+/**
+ * Randomized truncated SVD of the (sparse) training rating matrix, where
+ * unknown ratings are regarded as 0. It is used to initialize the subspaces
+ * of MF2DBoolean near a good solution, so that SGD only needs a few rounds of
+ * refinement. The rating matrix A is multiplied by a Gaussian block, refined
+ * with power iterations, and orthonormalized by QR. The SVD of the small
+ * matrix A^T Q then gives the leading singular triples. Products with A are
+ * computed in parallel on the rows of A and A^T. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class RandomizedSVD {
+	/**
+	 * The default number of extra random directions.
+	 */
+	public static final int DEFAULT_OVERSAMPLING = 10;
+
+	/**
+	 * The default number of power iterations.
+	 */
+	public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+	/**
+	 * The start position of the training ratings of each user.
+	 */
+	int[] userStarts;
+
+	/**
+	 * The items of the training ratings in user order.
+	 */
+	int[] userOrderItems;
+
+	/**
+	 * The training ratings in user order.
+	 */
+	double[] userOrderRatings;
+
+	/**
+	 * The start position of the training ratings of each item.
+	 */
+	int[] itemStarts;
+
+	/**
+	 * The users of the training ratings in item order.
+	 */
+	int[] itemOrderUsers;
+
+	/**
+	 * The training ratings in item order.
+	 */
+	double[] itemOrderRatings;
+
+	/**
+	 ************************
+	 * The first constructor. Index the training ratings of the dataset.
+	 *
+	 * @param paraDataset
+	 *            The dataset.
+	 ************************
+	 */
+	public RandomizedSVD(RatingSystem2DBoolean paraDataset) {
+		int tempNumUsers = paraDataset.getNumUsers();
+		int tempNumItems = paraDataset.getNumItems();
+
+		userStarts = new int[tempNumUsers + 1];
+		itemStarts = new int[tempNumItems + 1];
+		for (int i = 0; i < tempNumUsers; i++) {
+			userStarts[i + 1] = userStarts[i];
+			for (int j = 0; j < paraDataset.getUserNumRatings(i); j++) {
+				if (paraDataset.getTrainIndication(i, j)) {
+					userStarts[i + 1]++;
+					itemStarts[paraDataset.getTriple(i, j).item + 1]++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+		for (int i = 0; i < tempNumItems; i++) {
+			itemStarts[i + 1] += itemStarts[i];
+		} // Of for i
+
+		int tempNumRatings = userStarts[tempNumUsers];
+		userOrderItems = new int[tempNumRatings];
+		userOrderRatings = new double[tempNumRatings];
+		itemOrderUsers = new int[tempNumRatings];
+		itemOrderRatings = new double[tempNumRatings];
+		int[] tempNext = new int[tempNumItems];
+		System.arraycopy(itemStarts, 0, tempNext, 0, tempNumItems);
+		int tempPosition = 0;
+		Triple tempTriple;
+		for (int i = 0; i < tempNumUsers; i++) {
+			for (int j = 0; j < paraDataset.getUserNumRatings(i); j++) {
+				if (!paraDataset.getTrainIndication(i, j)) {
+					continue;
+				} // Of if
+				tempTriple = paraDataset.getTriple(i, j);
+				userOrderItems[tempPosition] = tempTriple.item;
+				userOrderRatings[tempPosition] = tempTriple.rating;
+				tempPosition++;
+
+				int tempSlot = tempNext[tempTriple.item]++;
+				itemOrderUsers[tempSlot] = i;
+				itemOrderRatings[tempSlot] = tempTriple.rating;
+			} // Of for j
+		} // Of for i
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Compute A X, where X has one row for each item.
+	 *
+	 * @param paraX
+	 *            The dense block.
+	 * @return The product, one row for each user.
+	 ************************
+	 */
+	double[][] multiply(final double[][] paraX) {
+		return sparseTimesDense(userStarts, userOrderItems, userOrderRatings, paraX);
+	}// Of multiply
+
+	/**
+	 ************************
+	 * Compute A^T X, where X has one row for each user.
+	 *
+	 * @param paraX
+	 *            The dense block.
+	 * @return The product, one row for each item.
+	 ************************
+	 */
+	double[][] transposeMultiply(final double[][] paraX) {
+		return sparseTimesDense(itemStarts, itemOrderUsers, itemOrderRatings, paraX);
+	}// Of transposeMultiply
+
+	/**
+	 ************************
+	 * Multiply a sparse matrix in the compressed row format by a dense block,
+	 * in parallel on the rows.
+	 ************************
+	 */
+	static double[][] sparseTimesDense(final int[] paraStarts, final int[] paraColumns,
+			final double[] paraValues, final double[][] paraX) {
+		final int tempWidth = paraX[0].length;
+		final double[][] resultProduct = new double[paraStarts.length - 1][tempWidth];
+		ParallelTools.parallelFor(resultProduct.length, ParallelTools.DEFAULT_NUM_CHUNKS,
+				new ParallelTools.RangeTask() {
+					public void run(int paraChunk, int paraStart, int paraEnd) {
+						for (int i = paraStart; i < paraEnd; i++) {
+							double[] tempRow = resultProduct[i];
+							for (int j = paraStarts[i]; j < paraStarts[i + 1]; j++) {
+								double[] tempXRow = paraX[paraColumns[j]];
+								double tempValue = paraValues[j];
+								for (int k = 0; k < tempWidth; k++) {
+									tempRow[k] += tempValue * tempXRow[k];
+								} // Of for k
+							} // Of for j
+						} // Of for i
+					}// Of run
+				});
+		return resultProduct;
+	}// Of sparseTimesDense
+
+	/**
+	 ************************
+	 * Orthonormalize the columns of a block.
+	 ************************
+	 */
+	static double[][] orthonormalize(double[][] paraBlock) {
+		return new QRDecomposition(new Matrix(paraBlock)).getQ().getArray();
+	}// Of orthonormalize
+
+	/**
+	 ************************
+	 * Initialize the subspaces of a model with the leading singular vectors,
+	 * each scaled by the square root of the singular value.
+	 *
+	 * @param paraModel
+	 *            The model, its rank is employed.
+	 * @param paraOversampling
+	 *            The number of extra random directions.
+	 * @param paraPowerIterations
+	 *            The number of power iterations.
+	 * @param paraSeed
+	 *            The seed of the Gaussian block.
+	 ************************
+	 */
+	public void initialize(MF2DBoolean paraModel, int paraOversampling,
+			int paraPowerIterations, long paraSeed) {
+		int tempNumUsers = userStarts.length - 1;
+		int tempNumItems = itemStarts.length - 1;
+		int tempRank = paraModel.rank;
+		int tempWidth = Math.min(tempRank + paraOversampling, Math.min(tempNumUsers, tempNumItems));
+
+		// Step 1. Y = A Omega.
+		Random tempRandom = new Random(paraSeed);
+		double[][] tempOmega = new double[tempNumItems][tempWidth];
+		for (int i = 0; i < tempNumItems; i++) {
+			for (int j = 0; j < tempWidth; j++) {
+				tempOmega[i][j] = tempRandom.nextGaussian();
+			} // Of for j
+		} // Of for i
+		double[][] tempQ = orthonormalize(multiply(tempOmega));
+
+		// Step 2. Power iterations Y = A A^T Q, orthonormalized each time.
+		for (int i = 0; i < paraPowerIterations; i++) {
+			double[][] tempZ = orthonormalize(transposeMultiply(tempQ));
+			tempQ = orthonormalize(multiply(tempZ));
+		} // Of for i
+
+		// Step 3. SVD of the small matrix A^T Q = W S Z^T, hence A ~ (Q Z) S W^T.
+		SingularValueDecomposition tempSvd = new Matrix(transposeMultiply(tempQ)).svd();
+		double[][] tempW = tempSvd.getU().getArray();
+		double[] tempSingularValues = tempSvd.getSingularValues();
+		double[][] tempLeft = new Matrix(tempQ).times(tempSvd.getV()).getArray();
+
+		// Step 4. Fill the subspaces. Extra dimensions, if any, are zero.
+		double[] tempScales = new double[tempRank];
+		for (int j = 0; j < Math.min(tempRank, tempWidth); j++) {
+			tempScales[j] = Math.sqrt(tempSingularValues[j]);
+		} // Of for j
+		paraModel.userSubspace = new double[tempNumUsers][tempRank];
+		for (int i = 0; i < tempNumUsers; i++) {
+			for (int j = 0; j < Math.min(tempRank, tempWidth); j++) {
+				paraModel.userSubspace[i][j] = tempLeft[i][j] * tempScales[j];
+			} // Of for j
+		} // Of for i
+		paraModel.itemSubspace = new double[tempNumItems][tempRank];
+		for (int i = 0; i < tempNumItems; i++) {
+			for (int j = 0; j < Math.min(tempRank, tempWidth); j++) {
+				paraModel.itemSubspace[i][j] = tempW[i][j] * tempScales[j];
+			} // Of for j
+		} // Of for i
+	}// Of initialize
+}// Of class RandomizedSVD
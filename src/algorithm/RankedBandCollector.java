@@ -0,0 +1,264 @@
+package algorithm;
+
+/**
+ * Keep the best numRecommend items no lower than the recommendation
+ * threshold, and the best numPromote of the remaining items no lower than the
+ * promotion threshold, with two bounded min-heaps of primitive arrays. An
+ * item pushed out of the recommendation heap falls to the promotion heap. A
+ * scan of n items takes O(n log k) time with no sorting, however many items
+ * clear the thresholds. The heaps are not sorted. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class RankedBandCollector {
+	/**
+	 * The threshold of the recommendation band.
+	 */
+	double recommendThreshold;
+
+	/**
+	 * The threshold of the promotion band.
+	 */
+	double promoteThreshold;
+
+	/**
+	 * The items of the recommendation heap.
+	 */
+	int[] recommendations;
+
+	/**
+	 * The scores of the recommendation heap.
+	 */
+	double[] recommendationScores;
+
+	/**
+	 * The number of items in the recommendation heap.
+	 */
+	int numRecommendations;
+
+	/**
+	 * The items of the promotion heap.
+	 */
+	int[] promotions;
+
+	/**
+	 * The scores of the promotion heap.
+	 */
+	double[] promotionScores;
+
+	/**
+	 * The number of items in the promotion heap.
+	 */
+	int numPromotions;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 ************************
+	 */
+	public RankedBandCollector() {
+		recommendations = new int[0];
+		recommendationScores = new double[0];
+		promotions = new int[0];
+		promotionScores = new double[0];
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Empty both heaps and set their capacities and thresholds.
+	 *
+	 * @param paraNumRecommend
+	 *            The number of items to recommend.
+	 * @param paraNumPromote
+	 *            The number of items to promote.
+	 * @param paraRecommendThreshold
+	 *            The threshold of the recommendation band.
+	 * @param paraPromoteThreshold
+	 *            The threshold of the promotion band.
+	 ************************
+	 */
+	public void reset(int paraNumRecommend, int paraNumPromote, double paraRecommendThreshold,
+			double paraPromoteThreshold) {
+		if (recommendations.length != paraNumRecommend) {
+			recommendations = new int[paraNumRecommend];
+			recommendationScores = new double[paraNumRecommend];
+		} // Of if
+		if (promotions.length != paraNumPromote) {
+			promotions = new int[paraNumPromote];
+			promotionScores = new double[paraNumPromote];
+		} // Of if
+		numRecommendations = 0;
+		numPromotions = 0;
+		recommendThreshold = paraRecommendThreshold;
+		promoteThreshold = paraPromoteThreshold;
+	}// Of reset
+
+	/**
+	 ************************
+	 * Offer a scored item.
+	 *
+	 * @param paraItem
+	 *            The item.
+	 * @param paraScore
+	 *            The score.
+	 ************************
+	 */
+	public void add(int paraItem, double paraScore) {
+		if (paraScore < promoteThreshold) {
+			return;
+		} // Of if
+		if ((paraScore < recommendThreshold) || (recommendations.length == 0)) {
+			addPromotion(paraItem, paraScore);
+			return;
+		} // Of if
+
+		if (numRecommendations < recommendations.length) {
+			numRecommendations = push(recommendations, recommendationScores, numRecommendations,
+					paraItem, paraScore);
+		} else if (paraScore > recommendationScores[0]) {
+			// The weakest recommendation falls to the promotion heap.
+			int tempItem = recommendations[0];
+			double tempScore = recommendationScores[0];
+			replaceTop(recommendations, recommendationScores, numRecommendations, paraItem,
+					paraScore);
+			addPromotion(tempItem, tempScore);
+		} else {
+			addPromotion(paraItem, paraScore);
+		} // Of if
+	}// Of add
+
+	/**
+	 ************************
+	 * Offer an item to the promotion heap.
+	 *
+	 * @param paraItem
+	 *            The item.
+	 * @param paraScore
+	 *            The score.
+	 ************************
+	 */
+	void addPromotion(int paraItem, double paraScore) {
+		if (numPromotions < promotions.length) {
+			numPromotions = push(promotions, promotionScores, numPromotions, paraItem, paraScore);
+		} else if ((numPromotions > 0) && (paraScore > promotionScores[0])) {
+			replaceTop(promotions, promotionScores, numPromotions, paraItem, paraScore);
+		} // Of if
+	}// Of addPromotion
+
+	/**
+	 ************************
+	 * Push an item to a heap which is not full.
+	 *
+	 * @param paraItems
+	 *            The items of the heap.
+	 * @param paraScores
+	 *            The scores of the heap.
+	 * @param paraSize
+	 *            The size of the heap.
+	 * @param paraItem
+	 *            The item.
+	 * @param paraScore
+	 *            The score.
+	 * @return The new size.
+	 ************************
+	 */
+	static int push(int[] paraItems, double[] paraScores, int paraSize, int paraItem,
+			double paraScore) {
+		// Sift up.
+		int i = paraSize;
+		while (i > 0) {
+			int tempParent = (i - 1) >>> 1;
+			if (paraScores[tempParent] <= paraScore) {
+				break;
+			} // Of if
+			paraItems[i] = paraItems[tempParent];
+			paraScores[i] = paraScores[tempParent];
+			i = tempParent;
+		} // Of while
+		paraItems[i] = paraItem;
+		paraScores[i] = paraScore;
+		return paraSize + 1;
+	}// Of push
+
+	/**
+	 ************************
+	 * Replace the top, i.e., the lowest score, of a heap.
+	 *
+	 * @param paraItems
+	 *            The items of the heap.
+	 * @param paraScores
+	 *            The scores of the heap.
+	 * @param paraSize
+	 *            The size of the heap.
+	 * @param paraItem
+	 *            The item.
+	 * @param paraScore
+	 *            The score.
+	 ************************
+	 */
+	static void replaceTop(int[] paraItems, double[] paraScores, int paraSize, int paraItem,
+			double paraScore) {
+		// Sift down.
+		int i = 0;
+		while (true) {
+			int tempChild = 2 * i + 1;
+			if (tempChild >= paraSize) {
+				break;
+			} // Of if
+			if ((tempChild + 1 < paraSize) && (paraScores[tempChild + 1] < paraScores[tempChild])) {
+				tempChild++;
+			} // Of if
+			if (paraScores[tempChild] >= paraScore) {
+				break;
+			} // Of if
+			paraItems[i] = paraItems[tempChild];
+			paraScores[i] = paraScores[tempChild];
+			i = tempChild;
+		} // Of while
+		paraItems[i] = paraItem;
+		paraScores[i] = paraScore;
+	}// Of replaceTop
+
+	/**
+	 ************************
+	 * Getter. Only the first getNumRecommendations() elements are valid.
+	 ************************
+	 */
+	public int[] getRecommendations() {
+		return recommendations;
+	}// Of getRecommendations
+
+	/**
+	 ************************
+	 * Getter. Only the first getNumPromotions() elements are valid.
+	 ************************
+	 */
+	public int[] getPromotions() {
+		return promotions;
+	}// Of getPromotions
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getNumRecommendations() {
+		return numRecommendations;
+	}// Of getNumRecommendations
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getNumPromotions() {
+		return numPromotions;
+	}// Of getNumPromotions
+}// Of class RankedBandCollector
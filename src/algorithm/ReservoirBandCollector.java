@@ -0,0 +1,160 @@
+package algorithm;
+
+import java.util.Random;
+
+/**
+ * Select a fixed number of items uniformly at random from each band in one
+ * pass, with a reservoir for each band (Algorithm R). Only O(numRecommend +
+ * numPromote) memory is needed, however many items fall in the bands. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ReservoirBandCollector implements BandCollector {
+	/**
+	 * The random object.
+	 */
+	Random random;
+
+	/**
+	 * The reservoir of the recommendation band.
+	 */
+	int[] recommendations;
+
+	/**
+	 * The reservoir of the promotion band.
+	 */
+	int[] promotions;
+
+	/**
+	 * The number of items seen in the recommendation band.
+	 */
+	int numRecommendationsSeen;
+
+	/**
+	 * The number of items seen in the promotion band.
+	 */
+	int numPromotionsSeen;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraRandom
+	 *            The random object.
+	 ************************
+	 */
+	public ReservoirBandCollector(Random paraRandom) {
+		random = paraRandom;
+		recommendations = new int[0];
+		promotions = new int[0];
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Empty both reservoirs and set their sizes.
+	 *
+	 * @param paraNumRecommend
+	 *            The number of items to select from the recommendation band.
+	 * @param paraNumPromote
+	 *            The number of items to select from the promotion band.
+	 ************************
+	 */
+	public void reset(int paraNumRecommend, int paraNumPromote) {
+		if (recommendations.length != paraNumRecommend) {
+			recommendations = new int[paraNumRecommend];
+		} // Of if
+		if (promotions.length != paraNumPromote) {
+			promotions = new int[paraNumPromote];
+		} // Of if
+		numRecommendationsSeen = 0;
+		numPromotionsSeen = 0;
+	}// Of reset
+
+	/**
+	 ************************
+	 * Offer an item to a reservoir.
+	 *
+	 * @param paraReservoir
+	 *            The reservoir.
+	 * @param paraNumSeen
+	 *            The number of items seen before this one.
+	 * @param paraItem
+	 *            The item.
+	 ************************
+	 */
+	void offer(int[] paraReservoir, int paraNumSeen, int paraItem) {
+		if (paraNumSeen < paraReservoir.length) {
+			paraReservoir[paraNumSeen] = paraItem;
+			return;
+		} // Of if
+
+		// Keep the item with probability size / (seen + 1).
+		int tempPosition = random.nextInt(paraNumSeen + 1);
+		if (tempPosition < paraReservoir.length) {
+			paraReservoir[tempPosition] = paraItem;
+		} // Of if
+	}// Of offer
+
+	/**
+	 ************************
+	 * Implement the method of BandCollector.
+	 ************************
+	 */
+	public void addRecommendation(int paraItem) {
+		offer(recommendations, numRecommendationsSeen, paraItem);
+		numRecommendationsSeen++;
+	}// Of addRecommendation
+
+	/**
+	 ************************
+	 * Implement the method of BandCollector.
+	 ************************
+	 */
+	public void addPromotion(int paraItem) {
+		offer(promotions, numPromotionsSeen, paraItem);
+		numPromotionsSeen++;
+	}// Of addPromotion
+
+	/**
+	 ************************
+	 * Getter. The reservoir is full only if enough items have been seen.
+	 ************************
+	 */
+	public int[] getRecommendations() {
+		return recommendations;
+	}// Of getRecommendations
+
+	/**
+	 ************************
+	 * Getter. The reservoir is full only if enough items have been seen.
+	 ************************
+	 */
+	public int[] getPromotions() {
+		return promotions;
+	}// Of getPromotions
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getNumRecommendationsSeen() {
+		return numRecommendationsSeen;
+	}// Of getNumRecommendationsSeen
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public int getNumPromotionsSeen() {
+		return numPromotionsSeen;
+	}// Of getNumPromotionsSeen
+}// Of class ReservoirBandCollector
@@ -0,0 +1,114 @@
+package algorithm;
+
+/**
+ * Keeps the statistics of the latest epochs in memory. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class RingBufferTrainingListener implements TrainingListener {
+	/**
+	 * The buffer.
+	 */
+	EpochStatistics[] buffer;
+
+	/**
+	 * The number of epochs received so far.
+	 */
+	long numReceived;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraCapacity
+	 *            How many epochs are kept.
+	 ************************
+	 */
+	public RingBufferTrainingListener(int paraCapacity) {
+		buffer = new EpochStatistics[Math.max(1, paraCapacity)];
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Keep the statistics, overwriting the oldest one if full.
+	 ************************
+	 */
+	public synchronized void epochFinished(EpochStatistics paraStatistics) {
+		buffer[(int) (numReceived % buffer.length)] = paraStatistics;
+		numReceived++;
+	}// Of epochFinished
+
+	/**
+	 ************************
+	 * The number of epochs kept.
+	 ************************
+	 */
+	public synchronized int size() {
+		return (int) Math.min(numReceived, buffer.length);
+	}// Of size
+
+	/**
+	 ************************
+	 * Get the statistics of an epoch.
+	 *
+	 * @param paraIndex
+	 *            The index, 0 for the oldest epoch kept.
+	 ************************
+	 */
+	public synchronized EpochStatistics get(int paraIndex) {
+		if ((paraIndex < 0) || (paraIndex >= size())) {
+			throw new IndexOutOfBoundsException("Error occurred in RingBufferTrainingListener.get("
+					+ paraIndex + "): only " + size() + " epochs are kept.");
+		} // Of if
+		return buffer[(int) ((numReceived - size() + paraIndex) % buffer.length)];
+	}// Of get
+
+	/**
+	 ************************
+	 * Get the statistics of the latest epoch, null if none.
+	 ************************
+	 */
+	public synchronized EpochStatistics getLatest() {
+		if (numReceived == 0) {
+			return null;
+		} // Of if
+		return get(size() - 1);
+	}// Of getLatest
+
+	/**
+	 ************************
+	 * The mean updates per second of the epochs kept.
+	 ************************
+	 */
+	public synchronized double getMeanUpdatesPerSecond() {
+		long tempNumUpdates = 0;
+		long tempNanos = 0;
+		for (int i = 0; i < size(); i++) {
+			tempNumUpdates += buffer[i].numUpdates;
+			tempNanos += buffer[i].wallNanos;
+		} // Of for i
+		if (tempNanos == 0) {
+			return 0;
+		} // Of if
+		return tempNumUpdates / (tempNanos / 1e9);
+	}// Of getMeanUpdatesPerSecond
+
+	/**
+	 ************************
+	 * Forget all epochs.
+	 ************************
+	 */
+	public synchronized void clear() {
+		numReceived = 0;
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = null;
+		} // Of for i
+	}// Of clear
+}// Of class RingBufferTrainingListener
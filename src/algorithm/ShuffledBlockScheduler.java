@@ -0,0 +1,406 @@
+package algorithm;
+
+import java.util.Random;
+
+import datamodel.*;
+
+/**
+ * Shuffled, cache-blocked mini-batch epochs for MF2DBoolean. The training
+ * ratings are binned into blocks, each covering a range of users and a range
+ * of items, such that the touched rows of both subspaces fit in the L2 cache.
+ * Each epoch visits the blocks in a fresh random order and the ratings of
+ * each block in a fresh random order, both generated in O(n) from a seeded
+ * stream. Ratings are processed in mini-batches, where the updates are
+ * accumulated and then applied once per touched row. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ShuffledBlockScheduler {
+	/**
+	 * The default L2 cache size in bytes.
+	 */
+	public static final int DEFAULT_CACHE_BYTES = 256 * 1024;
+
+	/**
+	 * The default number of ratings in a mini-batch.
+	 */
+	public static final int DEFAULT_MINI_BATCH_SIZE = 256;
+
+	/**
+	 * The model to train.
+	 */
+	MF2DBoolean model;
+
+	/**
+	 * The cache size in bytes.
+	 */
+	int cacheBytes;
+
+	/**
+	 * The number of ratings in a mini-batch.
+	 */
+	int miniBatchSize;
+
+	/**
+	 * The random stream for permutations.
+	 */
+	Random random;
+
+	/**
+	 * Users of the training ratings, grouped by blocks.
+	 */
+	int[] users;
+
+	/**
+	 * Items of the training ratings, grouped by blocks.
+	 */
+	int[] items;
+
+	/**
+	 * The training ratings, grouped by blocks.
+	 */
+	double[] ratings;
+
+	/**
+	 * The start position of each block. The last element is the number of
+	 * ratings.
+	 */
+	int[] blockStarts;
+
+	/**
+	 * The visiting order of the blocks.
+	 */
+	int[] blockOrder;
+
+	/**
+	 * The accumulated gradients of users, in the same layout as the adaptive
+	 * accumulators of the model.
+	 */
+	double[] userGradients;
+
+	/**
+	 * The accumulated gradients of items.
+	 */
+	double[] itemGradients;
+
+	/**
+	 * The mini-batch in which each user was last touched.
+	 */
+	int[] userStamps;
+
+	/**
+	 * The mini-batch in which each item was last touched.
+	 */
+	int[] itemStamps;
+
+	/**
+	 * The users touched by the current mini-batch.
+	 */
+	int[] touchedUsers;
+
+	/**
+	 * The items touched by the current mini-batch.
+	 */
+	int[] touchedItems;
+
+	/**
+	 * The index of the current mini-batch, used as the stamp.
+	 */
+	int currentBatch;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraModel
+	 *            The model to train.
+	 * @param paraCacheBytes
+	 *            The cache size in bytes.
+	 * @param paraMiniBatchSize
+	 *            The number of ratings in a mini-batch.
+	 * @param paraSeed
+	 *            The seed of the random stream.
+	 ************************
+	 */
+	public ShuffledBlockScheduler(MF2DBoolean paraModel, int paraCacheBytes,
+			int paraMiniBatchSize, long paraSeed) {
+		model = paraModel;
+		cacheBytes = paraCacheBytes;
+		miniBatchSize = paraMiniBatchSize;
+		random = new Random(paraSeed);
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Collect the training ratings and bin them into blocks. It should be
+	 * invoked whenever the training set or the rank changes.
+	 ************************
+	 */
+	public void prepare() {
+		RatingSystem2DBoolean tempDataset = model.dataset;
+		int tempNumUsers = tempDataset.getNumUsers();
+		int tempNumItems = tempDataset.getNumItems();
+		int tempRank = model.rank;
+
+		// Step 1. The block shape. Each row costs its values and its gradient.
+		int tempRowsPerBlock = Math.max(1, cacheBytes / (2 * tempRank * 8 * 2));
+		int tempUsersPerBlock = Math.min(tempRowsPerBlock, tempNumUsers);
+		int tempItemsPerBlock = Math.min(tempRowsPerBlock, tempNumItems);
+		int tempNumUserBlocks = (tempNumUsers + tempUsersPerBlock - 1) / tempUsersPerBlock;
+		int tempNumItemBlocks = (tempNumItems + tempItemsPerBlock - 1) / tempItemsPerBlock;
+		int tempNumBlocks = tempNumUserBlocks * tempNumItemBlocks;
+
+		// Step 2. Count ratings of each block.
+		int tempNumTraining = 0;
+		int[] tempBlockSizes = new int[tempNumBlocks];
+		Triple tempTriple;
+		for (int i = 0; i < tempNumUsers; i++) {
+			for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+				if (!tempDataset.getTrainIndication(i, j)) {
+					continue;
+				} // Of if
+
+				tempTriple = tempDataset.getTriple(i, j);
+				tempBlockSizes[(i / tempUsersPerBlock) * tempNumItemBlocks
+						+ tempTriple.item / tempItemsPerBlock]++;
+				tempNumTraining++;
+			} // Of for j
+		} // Of for i
+
+		blockStarts = new int[tempNumBlocks + 1];
+		for (int i = 0; i < tempNumBlocks; i++) {
+			blockStarts[i + 1] = blockStarts[i] + tempBlockSizes[i];
+		} // Of for i
+
+		// Step 3. Counting sort into blocks.
+		users = new int[tempNumTraining];
+		items = new int[tempNumTraining];
+		ratings = new double[tempNumTraining];
+		int[] tempPositions = new int[tempNumBlocks];
+		System.arraycopy(blockStarts, 0, tempPositions, 0, tempNumBlocks);
+		int tempBlock;
+		for (int i = 0; i < tempNumUsers; i++) {
+			for (int j = 0; j < tempDataset.getUserNumRatings(i); j++) {
+				if (!tempDataset.getTrainIndication(i, j)) {
+					continue;
+				} // Of if
+
+				tempTriple = tempDataset.getTriple(i, j);
+				tempBlock = (i / tempUsersPerBlock) * tempNumItemBlocks
+						+ tempTriple.item / tempItemsPerBlock;
+				users[tempPositions[tempBlock]] = tempTriple.user;
+				items[tempPositions[tempBlock]] = tempTriple.item;
+				ratings[tempPositions[tempBlock]] = tempTriple.rating;
+				tempPositions[tempBlock]++;
+			} // Of for j
+		} // Of for i
+
+		blockOrder = new int[tempNumBlocks];
+		for (int i = 0; i < tempNumBlocks; i++) {
+			blockOrder[i] = i;
+		} // Of for i
+
+		// Step 4. Buffers for accumulating updates.
+		userGradients = new double[tempNumUsers * tempRank];
+		itemGradients = new double[tempNumItems * tempRank];
+		userStamps = new int[tempNumUsers];
+		itemStamps = new int[tempNumItems];
+		touchedUsers = new int[miniBatchSize];
+		touchedItems = new int[miniBatchSize];
+		currentBatch = 0;
+	}// Of prepare
+
+	/**
+	 ************************
+	 * Shuffle the blocks and the ratings within each block with Fisher-Yates.
+	 * The ratings are swapped in place so that each block is still read
+	 * sequentially.
+	 ************************
+	 */
+	void shuffle() {
+		int tempIndex, tempInt;
+		for (int i = blockOrder.length - 1; i > 0; i--) {
+			tempIndex = random.nextInt(i + 1);
+			tempInt = blockOrder[i];
+			blockOrder[i] = blockOrder[tempIndex];
+			blockOrder[tempIndex] = tempInt;
+		} // Of for i
+
+		double tempDouble;
+		for (int i = 0; i < blockOrder.length; i++) {
+			int tempStart = blockStarts[i];
+			for (int j = blockStarts[i + 1] - 1; j > tempStart; j--) {
+				tempIndex = tempStart + random.nextInt(j - tempStart + 1);
+
+				tempInt = users[j];
+				users[j] = users[tempIndex];
+				users[tempIndex] = tempInt;
+
+				tempInt = items[j];
+				items[j] = items[tempIndex];
+				items[tempIndex] = tempInt;
+
+				tempDouble = ratings[j];
+				ratings[j] = ratings[tempIndex];
+				ratings[tempIndex] = tempDouble;
+			} // Of for j
+		} // Of for i
+	}// Of shuffle
+
+	/**
+	 ************************
+	 * Run one epoch. The training loss and the number of updates of the model
+	 * are set.
+	 ************************
+	 */
+	public void runEpoch() {
+		if ((users == null) || (userGradients.length != model.numUsers * model.rank)) {
+			prepare();
+		} // Of if
+
+		shuffle();
+
+		double tempLossSum = 0;
+		for (int i = 0; i < blockOrder.length; i++) {
+			int tempStart = blockStarts[blockOrder[i]];
+			int tempEnd = blockStarts[blockOrder[i] + 1];
+			for (int j = tempStart; j < tempEnd; j += miniBatchSize) {
+				tempLossSum += runMiniBatch(j, Math.min(j + miniBatchSize, tempEnd));
+			} // Of for j
+		} // Of for i
+
+		model.epochNumUpdates = ratings.length;
+		model.trainingLoss = tempLossSum / Math.max(ratings.length, 1);
+	}// Of runEpoch
+
+	/**
+	 ************************
+	 * Process a mini-batch. All residuals are computed with the subspaces at
+	 * the beginning of the mini-batch.
+	 *
+	 * @param paraStart
+	 *            The start position (inclusive).
+	 * @param paraEnd
+	 *            The end position (exclusive).
+	 * @return The sum of squared residuals.
+	 ************************
+	 */
+	double runMiniBatch(int paraStart, int paraEnd) {
+		int tempRank = model.rank;
+		double[][] tempUserSubspace = model.userSubspace;
+		double[][] tempItemSubspace = model.itemSubspace;
+		boolean tempRegular = (model.regularScheme != MF2DBoolean.NO_REGULAR);
+		double tempLambda = model.lambda;
+
+		currentBatch++;
+		int tempNumTouchedUsers = 0;
+		int tempNumTouchedItems = 0;
+
+		// Step 1. Accumulate the gradients.
+		double resultLossSum = 0;
+		for (int i = paraStart; i < paraEnd; i++) {
+			int tempUser = users[i];
+			int tempItem = items[i];
+			double[] tempUserVector = tempUserSubspace[tempUser];
+			double[] tempItemVector = tempItemSubspace[tempItem];
+
+			if (userStamps[tempUser] != currentBatch) {
+				userStamps[tempUser] = currentBatch;
+				touchedUsers[tempNumTouchedUsers] = tempUser;
+				tempNumTouchedUsers++;
+			} // Of if
+			if (itemStamps[tempItem] != currentBatch) {
+				itemStamps[tempItem] = currentBatch;
+				touchedItems[tempNumTouchedItems] = tempItem;
+				tempNumTouchedItems++;
+			} // Of if
+
+			double tempResidual = ratings[i] - model.predict(tempUser, tempItem);
+			resultLossSum += tempResidual * tempResidual;
+
+			int tempUserOffset = tempUser * tempRank;
+			int tempItemOffset = tempItem * tempRank;
+			for (int k = 0; k < tempRank; k++) {
+				userGradients[tempUserOffset + k] += 2 * tempResidual * tempItemVector[k];
+				itemGradients[tempItemOffset + k] += 2 * tempResidual * tempUserVector[k];
+				if (tempRegular) {
+					userGradients[tempUserOffset + k] -= tempLambda * tempUserVector[k];
+					itemGradients[tempItemOffset + k] -= tempLambda * tempItemVector[k];
+				} // Of if
+			} // Of for k
+		} // Of for i
+
+		// Step 2. Apply them once for each touched row.
+		for (int i = 0; i < tempNumTouchedUsers; i++) {
+			applyGradients(tempUserSubspace[touchedUsers[i]], userGradients,
+					touchedUsers[i] * tempRank, true, touchedUsers[i]);
+		} // Of for i
+		for (int i = 0; i < tempNumTouchedItems; i++) {
+			applyGradients(tempItemSubspace[touchedItems[i]], itemGradients,
+					touchedItems[i] * tempRank, false, touchedItems[i]);
+		} // Of for i
+
+		return resultLossSum;
+	}// Of runMiniBatch
+
+	/**
+	 ************************
+	 * Apply the accumulated gradients of a row, and clear them.
+	 *
+	 * @param paraVector
+	 *            The row of the subspace.
+	 * @param paraGradients
+	 *            The gradient buffer.
+	 * @param paraOffset
+	 *            The offset of the row in the buffer.
+	 * @param paraUser
+	 *            Is it a user row?
+	 * @param paraRow
+	 *            The index of the user/item.
+	 ************************
+	 */
+	void applyGradients(double[] paraVector, double[] paraGradients, int paraOffset,
+			boolean paraUser, int paraRow) {
+		int tempScheme = model.regularScheme;
+		if ((tempScheme != MF2DBoolean.ADAGRAD_REGULAR)
+				&& (tempScheme != MF2DBoolean.ADAM_REGULAR)) {
+			for (int k = 0; k < paraVector.length; k++) {
+				paraVector[k] += model.alpha * paraGradients[paraOffset + k];
+				paraGradients[paraOffset + k] = 0;
+			} // Of for k
+			return;
+		} // Of if
+
+		if ((model.userSecondMoments == null)
+				|| (model.userSecondMoments.length != userGradients.length)) {
+			model.initializeOptimizerState();
+		} // Of if
+
+		boolean tempAdam = (tempScheme == MF2DBoolean.ADAM_REGULAR);
+		double[] tempFirstMoments = paraUser ? model.userFirstMoments : model.itemFirstMoments;
+		double[] tempSecondMoments = paraUser ? model.userSecondMoments
+				: model.itemSecondMoments;
+		int[] tempCounts = paraUser ? model.userUpdateCounts : model.itemUpdateCounts;
+		double tempCorrection1 = 1;
+		double tempCorrection2 = 1;
+		if (tempAdam) {
+			tempCounts[paraRow]++;
+			tempCorrection1 = 1 - Math.pow(model.adamBeta1, tempCounts[paraRow]);
+			tempCorrection2 = 1 - Math.pow(model.adamBeta2, tempCounts[paraRow]);
+		} // Of if
+
+		for (int k = 0; k < paraVector.length; k++) {
+			paraVector[k] += model.adaptiveIncrement(tempFirstMoments, tempSecondMoments,
+					paraOffset + k, paraGradients[paraOffset + k], tempAdam, tempCorrection1,
+					tempCorrection2);
+			paraGradients[paraOffset + k] = 0;
+		} // Of for k
+	}// Of applyGradients
+}// Of class ShuffledBlockScheduler
@@ -0,0 +1,333 @@
+package algorithm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.*;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import datamodel.*;
+
+/**
+ * Out-of-core SGD for matrix factorization. Ratings are streamed from a
+ * RatingBlockFile in fixed-size blocks, and only the subspaces stay in memory.
+ * Reading is double-buffered: the next block is read asynchronously while the
+ * current one is being processed. Each round is one sequential pass over the
+ * file. The update rule is the same as MF2DBoolean. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class StreamingMF2D {
+	/**
+	 * The block file.
+	 */
+	String filename;
+
+	/**
+	 * The header of the block file.
+	 */
+	RatingBlockFile blockFile;
+
+	/**
+	 * The learning rate.
+	 */
+	double alpha = 0.0001;
+
+	/**
+	 * The regular parameter.
+	 */
+	double lambda = 0.005;
+
+	/**
+	 * The rank.
+	 */
+	int rank = 5;
+
+	/**
+	 * NO_REGULAR or PQ_REGULAR.
+	 */
+	int regularScheme = MF2DBoolean.NO_REGULAR;
+
+	/**
+	 * The user subspace.
+	 */
+	double[][] userSubspace;
+
+	/**
+	 * The item subspace.
+	 */
+	double[][] itemSubspace;
+
+	/**
+	 * The training loss of the last round.
+	 */
+	double trainingLoss;
+
+	/**
+	 ************************
+	 * The first constructor.
+	 *
+	 * @param paraFilename
+	 *            The block file.
+	 * @throws IOException
+	 *             If the header cannot be read.
+	 ************************
+	 */
+	public StreamingMF2D(String paraFilename) throws IOException {
+		filename = paraFilename;
+		blockFile = new RatingBlockFile(paraFilename);
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Set parameters.
+	 ************************
+	 */
+	public void setParameters(int paraRank, double paraAlpha, double paraLambda,
+			int paraRegularScheme) {
+		rank = paraRank;
+		alpha = paraAlpha;
+		lambda = paraLambda;
+		regularScheme = paraRegularScheme;
+	}// Of setParameters
+
+	/**
+	 ************************
+	 * Initialize subspaces. Each value is in [-paraRange, +paraRange].
+	 *
+	 * @param paraRange
+	 *            The range of the initial values.
+	 * @param paraSeed
+	 *            The seed.
+	 ************************
+	 */
+	public void initializeSubspaces(double paraRange, long paraSeed) {
+		Random tempRandom = new Random(paraSeed);
+		userSubspace = new double[blockFile.numUsers][rank];
+		for (int i = 0; i < blockFile.numUsers; i++) {
+			for (int j = 0; j < rank; j++) {
+				userSubspace[i][j] = (tempRandom.nextDouble() - 0.5) * 2 * paraRange;
+			} // Of for j
+		} // Of for i
+
+		itemSubspace = new double[blockFile.numItems][rank];
+		for (int i = 0; i < blockFile.numItems; i++) {
+			for (int j = 0; j < rank; j++) {
+				itemSubspace[i][j] = (tempRandom.nextDouble() - 0.5) * 2 * paraRange;
+			} // Of for j
+		} // Of for i
+	}// Of initializeSubspaces
+
+	/**
+	 ************************
+	 * Train.
+	 *
+	 * @param paraRounds
+	 *            The number of rounds, i.e., passes over the file.
+	 * @throws IOException
+	 *             If the file cannot be read.
+	 ************************
+	 */
+	public void train(int paraRounds) throws IOException {
+		AsynchronousFileChannel tempChannel = AsynchronousFileChannel.open(Paths.get(filename),
+				StandardOpenOption.READ);
+		ByteBuffer[] tempBuffers = { blockFile.allocateBlockBuffer(),
+				blockFile.allocateBlockBuffer() };
+		long tempFileEnd = RatingBlockFile.HEADER_BYTES
+				+ blockFile.numRatings * RatingBlockFile.RECORD_BYTES;
+		try {
+			for (int i = 0; i < paraRounds; i++) {
+				long tempStart = System.nanoTime();
+				double tempLossSum = 0;
+
+				// Read the first block, then always prefetch the next one.
+				long tempPosition = RatingBlockFile.HEADER_BYTES;
+				int tempCurrent = 0;
+				Future<Integer> tempPending = startRead(tempChannel, tempBuffers[tempCurrent],
+						tempPosition, tempFileEnd);
+				while (tempPending != null) {
+					finishRead(tempChannel, tempPending, tempBuffers[tempCurrent], tempPosition,
+							tempFileEnd);
+					tempPosition += tempBuffers[tempCurrent].limit();
+
+					tempPending = startRead(tempChannel, tempBuffers[1 - tempCurrent],
+							tempPosition, tempFileEnd);
+					tempLossSum += processBlock(tempBuffers[tempCurrent]);
+					tempCurrent = 1 - tempCurrent;
+				} // Of while
+
+				trainingLoss = tempLossSum / Math.max(blockFile.numRatings, 1);
+				if (i % 10 == 0) {
+					System.out.println("Round " + i + ", training loss = " + trainingLoss + ", "
+							+ (long) (blockFile.numRatings / ((System.nanoTime() - tempStart) / 1e9))
+							+ " updates/s.");
+				} // Of if
+			} // Of for i
+		} finally {
+			tempChannel.close();
+		} // Of try
+	}// Of train
+
+	/**
+	 ************************
+	 * Start reading a block asynchronously.
+	 *
+	 * @return The pending read, null if the end of the file is reached.
+	 ************************
+	 */
+	Future<Integer> startRead(AsynchronousFileChannel paraChannel, ByteBuffer paraBuffer,
+			long paraPosition, long paraFileEnd) {
+		if (paraPosition >= paraFileEnd) {
+			return null;
+		} // Of if
+
+		paraBuffer.clear();
+		paraBuffer.limit((int) Math.min(paraBuffer.capacity(), paraFileEnd - paraPosition));
+		return paraChannel.read(paraBuffer, paraPosition);
+	}// Of startRead
+
+	/**
+	 ************************
+	 * Wait for a read, and complete it if only part of the block is read.
+	 * The buffer is then flipped for processing.
+	 ************************
+	 */
+	void finishRead(AsynchronousFileChannel paraChannel, Future<Integer> paraPending,
+			ByteBuffer paraBuffer, long paraPosition, long paraFileEnd) throws IOException {
+		try {
+			int tempRead = paraPending.get();
+			while (paraBuffer.hasRemaining()) {
+				if (tempRead < 0) {
+					throw new EOFException("Error occurred in StreamingMF2D.finishRead(): "
+							+ filename + " is truncated.");
+				} // Of if
+				tempRead = paraChannel.read(paraBuffer, paraPosition + paraBuffer.position())
+						.get();
+			} // Of while
+		} catch (InterruptedException ee) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + filename);
+		} catch (ExecutionException ee) {
+			throw new IOException("Error occurred while reading " + filename, ee.getCause());
+		} // Of try
+		paraBuffer.flip();
+	}// Of finishRead
+
+	/**
+	 ************************
+	 * Update the subspaces with the ratings of a block.
+	 *
+	 * @param paraBuffer
+	 *            The block.
+	 * @return The sum of squared residuals.
+	 ************************
+	 */
+	double processBlock(ByteBuffer paraBuffer) {
+		double resultLossSum = 0;
+		boolean tempRegular = (regularScheme != MF2DBoolean.NO_REGULAR);
+		while (paraBuffer.remaining() >= RatingBlockFile.RECORD_BYTES) {
+			double[] tempUserVector = userSubspace[paraBuffer.getInt()];
+			double[] tempItemVector = itemSubspace[paraBuffer.getInt()];
+			double tempRating = paraBuffer.getDouble();
+
+			double tempPrediction = 0;
+			for (int k = 0; k < rank; k++) {
+				tempPrediction += tempUserVector[k] * tempItemVector[k];
+			} // Of for k
+			double tempResidual = tempRating - tempPrediction;
+			resultLossSum += tempResidual * tempResidual;
+
+			double tempValue;
+			for (int k = 0; k < rank; k++) {
+				tempValue = 2 * tempResidual * tempItemVector[k];
+				if (tempRegular) {
+					tempValue -= lambda * tempUserVector[k];
+				} // Of if
+				tempUserVector[k] += alpha * tempValue;
+			} // Of for k
+			for (int k = 0; k < rank; k++) {
+				tempValue = 2 * tempResidual * tempUserVector[k];
+				if (tempRegular) {
+					tempValue -= lambda * tempItemVector[k];
+				} // Of if
+				tempItemVector[k] += alpha * tempValue;
+			} // Of for k
+		} // Of while
+
+		return resultLossSum;
+	}// Of processBlock
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public double getTrainingLoss() {
+		return trainingLoss;
+	}// Of getTrainingLoss
+
+	/**
+	 ************************
+	 * Copy the subspaces into an in-memory model on the same data, e.g., for
+	 * evaluation or recommendation.
+	 *
+	 * @param paraModel
+	 *            The model. Its rank is set to that of this trainer.
+	 ************************
+	 */
+	public void copyTo(MF2DBoolean paraModel) {
+		paraModel.rank = rank;
+		paraModel.userSubspace = userSubspace;
+		paraModel.itemSubspace = itemSubspace;
+		paraModel.initializeOptimizerState();
+	}// Of copyTo
+
+	/**
+	 ************************
+	 * Stream MovieLens from a block file and evaluate in memory.
+	 ************************
+	 */
+	public static void testStreaming(String paraTextFilename, String paraBlockFilename,
+			int paraNumUsers, int paraNumItems, int paraNumRatings, double paraRatingLowerBound,
+			double paraRatingUpperBound, int paraRounds) {
+		try {
+			RatingBlockFile.convertCompressedText(paraTextFilename, paraBlockFilename,
+					paraNumUsers, paraNumItems, paraRatingLowerBound, paraRatingUpperBound,
+					RatingBlockFile.DEFAULT_RECORDS_PER_BLOCK);
+
+			StreamingMF2D tempLearner = new StreamingMF2D(paraBlockFilename);
+			System.out.println(tempLearner.blockFile);
+			tempLearner.setParameters(10, 0.0001, 0.005, MF2DBoolean.PQ_REGULAR);
+			tempLearner.initializeSubspaces(0.5, 0);
+			tempLearner.train(paraRounds);
+
+			RatingSystem2DBoolean tempDataset = new RatingSystem2DBoolean(paraTextFilename,
+					paraNumUsers, paraNumItems, paraNumRatings, paraRatingLowerBound,
+					paraRatingUpperBound, RatingSystem2DBoolean.DEFAULT_LIKE_THRESHOLD, true);
+			tempDataset.initializeTraining(0);
+			MF2DBoolean tempModel = new MF2DBoolean(tempDataset);
+			tempLearner.copyTo(tempModel);
+			System.out.println("On all data, " + tempModel.evaluate());
+		} catch (IOException ee) {
+			ee.printStackTrace();
+		} // Of try
+	}// Of testStreaming
+
+	/**
+	 ************************
+	 * @param args
+	 ************************
+	 */
+	public static void main(String args[]) {
+		testStreaming("data/movielens943u1682m.txt", "data/movielens943u1682m.blocks", 943,
+				1682, 100000, 1, 5, 100);
+	}// Of main
+}// Of class StreamingMF2D
@@ -405,7 +405,7 @@ public class TCR {
 		TCR tcr = new TCR("data/jester-data-1/jester-data-1.txt", 24983, 101, 1810455, -10, 10, 0.5,
 				false, 2, 1.0);
 		System.out.println(tcr);
-		tcr.stage2Recommender.pretrain();
+		tcr.stage2Recommender.pretrain("data/jester-data-1/jester-data-1.checkpoint");
 
 		double tempTotalCost = tcr.leaveUserOutRecommend();
 
@@ -0,0 +1,26 @@
+package algorithm;
+
+/**
+ * Receives the statistics of each epoch of MF2DBoolean.train(int). Listeners
+ * are called in the training thread, so they should be cheap. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public interface TrainingListener {
+	/**
+	 ************************
+	 * An epoch has finished.
+	 *
+	 * @param paraStatistics
+	 *            The statistics of the epoch. It is not reused by the model.
+	 ************************
+	 */
+	public void epochFinished(EpochStatistics paraStatistics);
+}// Of interface TrainingListener
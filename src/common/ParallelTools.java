@@ -0,0 +1,164 @@
+package common;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Simple data-parallel loops on a shared pool of daemon threads. A loop is cut
+ * into a fixed number of contiguous chunks which does not depend on the
+ * number of threads. Hence per-chunk partial results merged in chunk order
+ * are deterministic. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class ParallelTools extends Object {
+	/**
+	 * The default number of chunks of a loop.
+	 */
+	public static final int DEFAULT_NUM_CHUNKS = 64;
+
+	/**
+	 * The number of threads.
+	 */
+	private static int numThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The thread pool, created on demand.
+	 */
+	private static ExecutorService pool;
+
+	/**
+	 * The body of a parallel loop.
+	 */
+	public static abstract class RangeTask {
+		/**
+		 **********************************
+		 * Handle a chunk of the loop.
+		 *
+		 * @param paraChunk
+		 *            The index of the chunk.
+		 * @param paraStart
+		 *            The start index (inclusive).
+		 * @param paraEnd
+		 *            The end index (exclusive).
+		 **********************************
+		 */
+		public abstract void run(int paraChunk, int paraStart, int paraEnd);
+	}// Of class RangeTask
+
+	/**
+	 **********************************
+	 * Setter. The pool is rebuilt on the next loop.
+	 *
+	 * @param paraNumThreads
+	 *            The number of threads.
+	 **********************************
+	 */
+	public static synchronized void setNumThreads(int paraNumThreads) {
+		numThreads = Math.max(1, paraNumThreads);
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		} // Of if
+	}// Of setNumThreads
+
+	/**
+	 **********************************
+	 * Getter.
+	 **********************************
+	 */
+	public static int getNumThreads() {
+		return numThreads;
+	}// Of getNumThreads
+
+	/**
+	 **********************************
+	 * Get the pool, create it if necessary.
+	 **********************************
+	 */
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				public Thread newThread(Runnable paraRunnable) {
+					Thread tempThread = new Thread(paraRunnable, "ParallelTools");
+					tempThread.setDaemon(true);
+					return tempThread;
+				}// Of newThread
+			});
+		} // Of if
+		return pool;
+	}// Of getPool
+
+	/**
+	 **********************************
+	 * The start index of the given chunk.
+	 *
+	 * @param paraLength
+	 *            The length of the loop.
+	 * @param paraNumChunks
+	 *            The number of chunks.
+	 * @param paraChunk
+	 *            The index of the chunk.
+	 **********************************
+	 */
+	public static int chunkStart(int paraLength, int paraNumChunks, int paraChunk) {
+		return (int) ((long) paraLength * paraChunk / paraNumChunks);
+	}// Of chunkStart
+
+	/**
+	 **********************************
+	 * Run a loop over [0, paraLength) in parallel, and wait for all chunks.
+	 *
+	 * @param paraLength
+	 *            The length of the loop.
+	 * @param paraNumChunks
+	 *            The number of chunks. Some of them may be empty.
+	 * @param paraTask
+	 *            The body.
+	 **********************************
+	 */
+	public static void parallelFor(int paraLength, final int paraNumChunks,
+			final RangeTask paraTask) {
+		// Run in the current thread if there is no need for parallelism.
+		if ((numThreads == 1) || (paraNumChunks == 1)) {
+			for (int i = 0; i < paraNumChunks; i++) {
+				paraTask.run(i, chunkStart(paraLength, paraNumChunks, i),
+						chunkStart(paraLength, paraNumChunks, i + 1));
+			} // Of for i
+			return;
+		} // Of if
+
+		ExecutorService tempPool = getPool();
+		List<Future<?>> tempFutures = new ArrayList<Future<?>>(paraNumChunks);
+		for (int i = 0; i < paraNumChunks; i++) {
+			final int tempChunk = i;
+			final int tempStart = chunkStart(paraLength, paraNumChunks, i);
+			final int tempEnd = chunkStart(paraLength, paraNumChunks, i + 1);
+			tempFutures.add(tempPool.submit(new Runnable() {
+				public void run() {
+					paraTask.run(tempChunk, tempStart, tempEnd);
+				}// Of run
+			}));
+		} // Of for i
+
+		for (int i = 0; i < tempFutures.size(); i++) {
+			try {
+				tempFutures.get(i).get();
+			} catch (InterruptedException ee) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted in ParallelTools.parallelFor().");
+			} catch (ExecutionException ee) {
+				throw new RuntimeException(
+						"Error occurred in ParallelTools.parallelFor(): " + ee.getCause(),
+						ee.getCause());
+			} // Of try
+		} // Of for i
+	}// Of parallelFor
+}// Of class ParallelTools
@@ -124,6 +124,68 @@ public class SimpleTools extends Object {
 		return resultArray;
 	}// Of randomSelectFromArray
 
+	/**
+	 *********************************** 
+	 * Solve a small symmetric positive definite system A x = b in place with
+	 * the Cholesky decomposition. Only the lower triangle of A is read, and
+	 * it is overwritten with the factor L. b is overwritten with x.
+	 * 
+	 * @param paraMatrix
+	 *            The matrix A, at least paraSize x paraSize.
+	 * @param paraVector
+	 *            The vector b, at least paraSize long.
+	 * @param paraSize
+	 *            The size of the system.
+	 * @return false if the matrix is not positive definite, and then b is
+	 *         unchanged.
+	 *********************************** 
+	 */
+	public static boolean choleskySolve(double[][] paraMatrix, double[] paraVector,
+			int paraSize) {
+		// Step 1. A = L L^T.
+		for (int j = 0; j < paraSize; j++) {
+			double[] tempRowJ = paraMatrix[j];
+			double tempDiagonal = tempRowJ[j];
+			for (int k = 0; k < j; k++) {
+				tempDiagonal -= tempRowJ[k] * tempRowJ[k];
+			} // Of for k
+			if (tempDiagonal <= 0) {
+				return false;
+			} // Of if
+			tempDiagonal = Math.sqrt(tempDiagonal);
+			tempRowJ[j] = tempDiagonal;
+
+			for (int i = j + 1; i < paraSize; i++) {
+				double[] tempRowI = paraMatrix[i];
+				double tempValue = tempRowI[j];
+				for (int k = 0; k < j; k++) {
+					tempValue -= tempRowI[k] * tempRowJ[k];
+				} // Of for k
+				tempRowI[j] = tempValue / tempDiagonal;
+			} // Of for i
+		} // Of for j
+
+		// Step 2. L y = b.
+		for (int i = 0; i < paraSize; i++) {
+			double tempValue = paraVector[i];
+			for (int k = 0; k < i; k++) {
+				tempValue -= paraMatrix[i][k] * paraVector[k];
+			} // Of for k
+			paraVector[i] = tempValue / paraMatrix[i][i];
+		} // Of for i
+
+		// Step 3. L^T x = y.
+		for (int i = paraSize - 1; i >= 0; i--) {
+			double tempValue = paraVector[i];
+			for (int k = i + 1; k < paraSize; k++) {
+				tempValue -= paraMatrix[k][i] * paraVector[k];
+			} // Of for k
+			paraVector[i] = tempValue / paraMatrix[i][i];
+		} // Of for i
+
+		return true;
+	}// Of choleskySolve
+
 	/**
 	 ************************* 
 	 * An instance converted to a double array, where the class label is not
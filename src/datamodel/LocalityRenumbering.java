@@ -0,0 +1,362 @@
+package datamodel;
+
+import java.util.*;
+
+/**
+ * Renumber users and items so that consecutive updates touch nearby rows of
+ * the subspaces. Items are renumbered by popularity in descending order, so
+ * the rows of hot items are packed together. Users are ordered by the mean
+ * new id of their items, so that neighboring users share items, and then the
+ * ratings of each user are sorted by the new item id. The permutations are
+ * kept to translate ids and subspaces back. <br>
+ * If only items are renumbered, the ratings of each user keep their original
+ * order. With the same (translated) initial subspaces, the visiting order of
+ * SGD is then unchanged, hence the models are identical up to the
+ * relabelling. Reordering users changes the visiting order. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class LocalityRenumbering {
+	/**
+	 * The new id of each original user.
+	 */
+	int[] newUserIds;
+
+	/**
+	 * The original id of each new user.
+	 */
+	int[] originalUserIds;
+
+	/**
+	 * The new id of each original item.
+	 */
+	int[] newItemIds;
+
+	/**
+	 * The original id of each new item.
+	 */
+	int[] originalItemIds;
+
+	/**
+	 * The renumbered dataset.
+	 */
+	RatingSystem2DBoolean renumberedDataset;
+
+	/**
+	 ************************
+	 * The first constructor. The given dataset is not changed.
+	 *
+	 * @param paraDataset
+	 *            The dataset.
+	 * @param paraRenumberItems
+	 *            Renumber items by popularity or not.
+	 * @param paraReorderUsers
+	 *            Reorder users by their items or not.
+	 ************************
+	 */
+	public LocalityRenumbering(RatingSystem2DBoolean paraDataset, boolean paraRenumberItems,
+			boolean paraReorderUsers) {
+		int tempNumUsers = paraDataset.getNumUsers();
+		int tempNumItems = paraDataset.getNumItems();
+
+		// Step 1. Items by popularity, ties broken by the original id.
+		originalItemIds = identity(tempNumItems);
+		if (paraRenumberItems) {
+			originalItemIds = sortedByKey(tempNumItems, null, paraDataset.itemPopularityArray);
+		} // Of if
+		newItemIds = inverse(originalItemIds);
+
+		// Step 2. Users by the mean new id of their items.
+		originalUserIds = identity(tempNumUsers);
+		if (paraReorderUsers) {
+			double[] tempCentroids = new double[tempNumUsers];
+			for (int i = 0; i < tempNumUsers; i++) {
+				Triple[] tempRow = paraDataset.data[i];
+				if (tempRow.length == 0) {
+					tempCentroids[i] = tempNumItems;
+					continue;
+				} // Of if
+				for (int j = 0; j < tempRow.length; j++) {
+					tempCentroids[i] += newItemIds[tempRow[j].item];
+				} // Of for j
+				tempCentroids[i] /= tempRow.length;
+			} // Of for i
+			originalUserIds = sortedByKey(tempNumUsers, tempCentroids, null);
+		} // Of if
+		newUserIds = inverse(originalUserIds);
+
+		// Step 3. Build the renumbered dataset.
+		renumberedDataset = new RatingSystem2DBoolean(paraDataset);
+		for (int i = 0; i < tempNumUsers; i++) {
+			int tempOriginalUser = originalUserIds[i];
+			Triple[] tempRow = paraDataset.data[tempOriginalUser];
+			boolean[] tempIndications = paraDataset.trainingIndicationMatrix[tempOriginalUser];
+
+			// Sort the ratings of the user by the new item id if users are
+			// reordered, otherwise keep the visiting order.
+			Integer[] tempOrder = new Integer[tempRow.length];
+			for (int j = 0; j < tempRow.length; j++) {
+				tempOrder[j] = j;
+			} // Of for j
+			if (paraReorderUsers) {
+				final Triple[] tempFinalRow = tempRow;
+				Arrays.sort(tempOrder, new Comparator<Integer>() {
+					public int compare(Integer paraFirst, Integer paraSecond) {
+						return newItemIds[tempFinalRow[paraFirst].item]
+								- newItemIds[tempFinalRow[paraSecond].item];
+					}// Of compare
+				});
+			} // Of if
+
+			Triple[] tempNewRow = new Triple[tempRow.length];
+			boolean[] tempNewIndications = new boolean[tempRow.length];
+			for (int j = 0; j < tempRow.length; j++) {
+				Triple tempTriple = tempRow[tempOrder[j]];
+				tempNewRow[j] = new Triple(i, newItemIds[tempTriple.item], tempTriple.rating);
+				tempNewIndications[j] = tempIndications[tempOrder[j]];
+			} // Of for j
+			renumberedDataset.data[i] = tempNewRow;
+			renumberedDataset.trainingIndicationMatrix[i] = tempNewIndications;
+		} // Of for i
+
+		RatingSystem2DBoolean tempNew = renumberedDataset;
+		for (int i = 0; i < tempNumItems; i++) {
+			int tempOriginalItem = originalItemIds[i];
+			tempNew.itemPopularityArray[i] = paraDataset.itemPopularityArray[tempOriginalItem];
+			tempNew.itemRatingSumArray[i] = paraDataset.itemRatingSumArray[tempOriginalItem];
+			tempNew.itemAverageRatingArray[i] = paraDataset.itemAverageRatingArray[tempOriginalItem];
+		} // Of for i
+		renumberedDataset.trainingVersion++;
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * The identity permutation.
+	 ************************
+	 */
+	static int[] identity(int paraLength) {
+		int[] resultPermutation = new int[paraLength];
+		for (int i = 0; i < paraLength; i++) {
+			resultPermutation[i] = i;
+		} // Of for i
+		return resultPermutation;
+	}// Of identity
+
+	/**
+	 ************************
+	 * The inverse of a permutation.
+	 ************************
+	 */
+	static int[] inverse(int[] paraPermutation) {
+		int[] resultInverse = new int[paraPermutation.length];
+		for (int i = 0; i < paraPermutation.length; i++) {
+			resultInverse[paraPermutation[i]] = i;
+		} // Of for i
+		return resultInverse;
+	}// Of inverse
+
+	/**
+	 ************************
+	 * Sort indices by keys. Stable, so ties keep the original order.
+	 *
+	 * @param paraLength
+	 *            The number of indices.
+	 * @param paraAscendingKeys
+	 *            Keys in ascending order, used if paraDescendingKeys is null.
+	 * @param paraDescendingKeys
+	 *            Keys in descending order.
+	 * @return The sorted indices.
+	 ************************
+	 */
+	static int[] sortedByKey(int paraLength, final double[] paraAscendingKeys,
+			final int[] paraDescendingKeys) {
+		Integer[] tempOrder = new Integer[paraLength];
+		for (int i = 0; i < paraLength; i++) {
+			tempOrder[i] = i;
+		} // Of for i
+		Arrays.sort(tempOrder, new Comparator<Integer>() {
+			public int compare(Integer paraFirst, Integer paraSecond) {
+				if (paraDescendingKeys != null) {
+					return paraDescendingKeys[paraSecond] - paraDescendingKeys[paraFirst];
+				} // Of if
+				return Double.compare(paraAscendingKeys[paraFirst], paraAscendingKeys[paraSecond]);
+			}// Of compare
+		});
+
+		int[] resultOrder = new int[paraLength];
+		for (int i = 0; i < paraLength; i++) {
+			resultOrder[i] = tempOrder[i];
+		} // Of for i
+		return resultOrder;
+	}// Of sortedByKey
+
+	/**
+	 ************************
+	 * Getter.
+	 ************************
+	 */
+	public RatingSystem2DBoolean getRenumberedDataset() {
+		return renumberedDataset;
+	}// Of getRenumberedDataset
+
+	/**
+	 ************************
+	 * Translate a new user id to the original one.
+	 ************************
+	 */
+	public int toOriginalUser(int paraNewUser) {
+		return originalUserIds[paraNewUser];
+	}// Of toOriginalUser
+
+	/**
+	 ************************
+	 * Translate an original user id to the new one.
+	 ************************
+	 */
+	public int toNewUser(int paraOriginalUser) {
+		return newUserIds[paraOriginalUser];
+	}// Of toNewUser
+
+	/**
+	 ************************
+	 * Translate a new item id to the original one.
+	 ************************
+	 */
+	public int toOriginalItem(int paraNewItem) {
+		return originalItemIds[paraNewItem];
+	}// Of toOriginalItem
+
+	/**
+	 ************************
+	 * Translate an original item id to the new one.
+	 ************************
+	 */
+	public int toNewItem(int paraOriginalItem) {
+		return newItemIds[paraOriginalItem];
+	}// Of toNewItem
+
+	/**
+	 ************************
+	 * Translate new item ids to the original ones, e.g., a recommendation.
+	 *
+	 * @param paraNewItems
+	 *            The new item ids.
+	 * @return The original item ids in the same order.
+	 ************************
+	 */
+	public int[] toOriginalItems(int[] paraNewItems) {
+		int[] resultItems = new int[paraNewItems.length];
+		for (int i = 0; i < paraNewItems.length; i++) {
+			resultItems[i] = originalItemIds[paraNewItems[i]];
+		} // Of for i
+		return resultItems;
+	}// Of toOriginalItems
+
+	/**
+	 ************************
+	 * Reorder the rows of a user subspace trained on the renumbered dataset
+	 * into the original user order. The rows are shared, not copied.
+	 ************************
+	 */
+	public double[][] toOriginalUserOrder(double[][] paraUserSubspace) {
+		return permuteRows(paraUserSubspace, newUserIds);
+	}// Of toOriginalUserOrder
+
+	/**
+	 ************************
+	 * Reorder the rows of an item subspace trained on the renumbered dataset
+	 * into the original item order.
+	 ************************
+	 */
+	public double[][] toOriginalItemOrder(double[][] paraItemSubspace) {
+		return permuteRows(paraItemSubspace, newItemIds);
+	}// Of toOriginalItemOrder
+
+	/**
+	 ************************
+	 * Reorder the rows of a user subspace in the original order into the new
+	 * order, e.g., for the initial values.
+	 ************************
+	 */
+	public double[][] toNewUserOrder(double[][] paraUserSubspace) {
+		return permuteRows(paraUserSubspace, originalUserIds);
+	}// Of toNewUserOrder
+
+	/**
+	 ************************
+	 * Reorder the rows of an item subspace in the original order into the new
+	 * order.
+	 ************************
+	 */
+	public double[][] toNewItemOrder(double[][] paraItemSubspace) {
+		return permuteRows(paraItemSubspace, originalItemIds);
+	}// Of toNewItemOrder
+
+	/**
+	 ************************
+	 * Row i of the result is row paraSourceRows[i] of the matrix.
+	 ************************
+	 */
+	static double[][] permuteRows(double[][] paraMatrix, int[] paraSourceRows) {
+		double[][] resultMatrix = new double[paraMatrix.length][];
+		for (int i = 0; i < paraMatrix.length; i++) {
+			resultMatrix[i] = paraMatrix[paraSourceRows[i]];
+		} // Of for i
+		return resultMatrix;
+	}// Of permuteRows
+
+	/**
+	 ***********************************
+	 * Show me.
+	 ***********************************
+	 */
+	public String toString() {
+		return "Renumbering of " + newUserIds.length + " users and " + newItemIds.length
+				+ " items, the most popular item is " + originalItemIds[0] + ".";
+	}// Of toString
+
+	/**
+	 ************************
+	 * Renumber a dataset and check that each rating is kept.
+	 ************************
+	 */
+	public static void testRenumbering(String paraFilename, int paraNumUsers, int paraNumItems,
+			int paraNumRatings, double paraRatingLowerBound, double paraRatingUpperBound,
+			double paraLikeThreshold, boolean paraCompress) {
+		RatingSystem2DBoolean tempDataset = new RatingSystem2DBoolean(paraFilename, paraNumUsers,
+				paraNumItems, paraNumRatings, paraRatingLowerBound, paraRatingUpperBound,
+				paraLikeThreshold, paraCompress);
+		tempDataset.initializeTraining(0.8);
+		LocalityRenumbering tempRenumbering = new LocalityRenumbering(tempDataset, true, true);
+		System.out.println(tempRenumbering);
+
+		RatingSystem2DBoolean tempRenumbered = tempRenumbering.getRenumberedDataset();
+		int tempNumMismatches = 0;
+		for (int i = 0; i < tempRenumbered.getNumUsers(); i++) {
+			for (int j = 0; j < tempRenumbered.getUserNumRatings(i); j++) {
+				Triple tempTriple = tempRenumbered.getTriple(i, j);
+				if (tempDataset.getUserItemRating(tempRenumbering.toOriginalUser(i),
+						tempRenumbering.toOriginalItem(tempTriple.item)) != tempTriple.rating) {
+					tempNumMismatches++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+		System.out.println("Mismatched ratings: " + tempNumMismatches);
+	}// Of testRenumbering
+
+	/**
+	 ************************
+	 * @param args
+	 ************************
+	 */
+	public static void main(String args[]) {
+		testRenumbering("data/movielens943u1682m.txt", 943, 1682, 100000, 1, 5, 3.5, true);
+	}// Of main
+}// Of class LocalityRenumbering
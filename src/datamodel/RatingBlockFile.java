@@ -0,0 +1,268 @@
+package datamodel;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * A binary rating file organized in fixed-size blocks, for streaming over
+ * ratings that do not fit in memory. The header stores the sizes, the mean
+ * rating and the (centralized) rating bounds. Each record is a user, an item
+ * and a centralized rating. <br>
+ * Project: Three-way conversational recommendation.<br>
+ *
+ * @author Fan Min<br>
+ *         www.fansmale.com, github.com/fansmale/TCR.<br>
+ *         Email: minfan@swpu.edu.cn, minfanphd@163.com.<br>
+ * @date Created: October 19, 2026.<br>
+ *       Last modified: October 19, 2026.
+ * @version 1.0
+ */
+
+public class RatingBlockFile {
+	/**
+	 * The magic number, "RBLK" in ASCII.
+	 */
+	public static final int MAGIC = 0x52424C4B;
+
+	/**
+	 * The size of the header in bytes.
+	 */
+	public static final int HEADER_BYTES = 64;
+
+	/**
+	 * The size of a record in bytes: user, item and rating.
+	 */
+	public static final int RECORD_BYTES = 16;
+
+	/**
+	 * The default number of records in a block, 1 MB per block.
+	 */
+	public static final int DEFAULT_RECORDS_PER_BLOCK = 65536;
+
+	/**
+	 * Number of users.
+	 */
+	public int numUsers;
+
+	/**
+	 * Number of items.
+	 */
+	public int numItems;
+
+	/**
+	 * Number of ratings.
+	 */
+	public long numRatings;
+
+	/**
+	 * The number of records in a block.
+	 */
+	public int recordsPerBlock;
+
+	/**
+	 * The mean rating which has been subtracted.
+	 */
+	public double meanRating;
+
+	/**
+	 * The lower bound of the centralized ratings.
+	 */
+	public double ratingLowerBound;
+
+	/**
+	 * The upper bound of the centralized ratings.
+	 */
+	public double ratingUpperBound;
+
+	/**
+	 ************************
+	 * Read the header of a block file.
+	 *
+	 * @param paraFilename
+	 *            The block file.
+	 * @throws IOException
+	 *             If the file cannot be read or is not a block file.
+	 ************************
+	 */
+	public RatingBlockFile(String paraFilename) throws IOException {
+		DataInputStream tempInput = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(paraFilename)));
+		try {
+			if (tempInput.readInt() != MAGIC) {
+				throw new IOException("Error occurred in RatingBlockFile(): " + paraFilename
+						+ " is not a rating block file.");
+			} // Of if
+			numUsers = tempInput.readInt();
+			numItems = tempInput.readInt();
+			recordsPerBlock = tempInput.readInt();
+			numRatings = tempInput.readLong();
+			meanRating = tempInput.readDouble();
+			ratingLowerBound = tempInput.readDouble();
+			ratingUpperBound = tempInput.readDouble();
+		} finally {
+			tempInput.close();
+		} // Of try
+	}// Of the first constructor
+
+	/**
+	 ************************
+	 * Write the header.
+	 ************************
+	 */
+	static void writeHeader(DataOutputStream paraOutput, int paraNumUsers, int paraNumItems,
+			int paraRecordsPerBlock, long paraNumRatings, double paraMeanRating,
+			double paraRatingLowerBound, double paraRatingUpperBound) throws IOException {
+		paraOutput.writeInt(MAGIC);
+		paraOutput.writeInt(paraNumUsers);
+		paraOutput.writeInt(paraNumItems);
+		paraOutput.writeInt(paraRecordsPerBlock);
+		paraOutput.writeLong(paraNumRatings);
+		paraOutput.writeDouble(paraMeanRating);
+		paraOutput.writeDouble(paraRatingLowerBound);
+		paraOutput.writeDouble(paraRatingUpperBound);
+		// Reserved.
+		for (int i = 48; i < HEADER_BYTES; i += 4) {
+			paraOutput.writeInt(0);
+		} // Of for i
+	}// Of writeHeader
+
+	/**
+	 ************************
+	 * Write the training ratings of a dataset into a block file.
+	 *
+	 * @param paraDataset
+	 *            The dataset, already centralized.
+	 * @param paraFilename
+	 *            The block file.
+	 * @param paraRecordsPerBlock
+	 *            The number of records in a block.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 ************************
+	 */
+	public static void write(RatingSystem2DBoolean paraDataset, String paraFilename,
+			int paraRecordsPerBlock) throws IOException {
+		long tempNumTraining = 0;
+		for (int i = 0; i < paraDataset.getNumUsers(); i++) {
+			for (int j = 0; j < paraDataset.getUserNumRatings(i); j++) {
+				if (paraDataset.getTrainIndication(i, j)) {
+					tempNumTraining++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+
+		DataOutputStream tempOutput = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(paraFilename), 1 << 16));
+		try {
+			writeHeader(tempOutput, paraDataset.getNumUsers(), paraDataset.getNumItems(),
+					paraRecordsPerBlock, tempNumTraining, paraDataset.getMeanRating(),
+					paraDataset.getRatingLowerBound(), paraDataset.getRatingUpperBound());
+			Triple tempTriple;
+			for (int i = 0; i < paraDataset.getNumUsers(); i++) {
+				for (int j = 0; j < paraDataset.getUserNumRatings(i); j++) {
+					if (!paraDataset.getTrainIndication(i, j)) {
+						continue;
+					} // Of if
+					tempTriple = paraDataset.getTriple(i, j);
+					tempOutput.writeInt(tempTriple.user);
+					tempOutput.writeInt(tempTriple.item);
+					tempOutput.writeDouble(tempTriple.rating);
+				} // Of for j
+			} // Of for i
+		} finally {
+			tempOutput.close();
+		} // Of try
+	}// Of write
+
+	/**
+	 ************************
+	 * Convert a rating log in the compressed text format (user,item,rating per
+	 * line) into a block file without holding the ratings in memory. The first
+	 * pass computes the mean rating, the second one writes centralized
+	 * ratings.
+	 *
+	 * @param paraTextFilename
+	 *            The text file.
+	 * @param paraBlockFilename
+	 *            The block file.
+	 * @param paraNumUsers
+	 *            The number of users.
+	 * @param paraNumItems
+	 *            The number of items.
+	 * @param paraRatingLowerBound
+	 *            The lower bound of ratings.
+	 * @param paraRatingUpperBound
+	 *            The upper bound of ratings.
+	 * @param paraRecordsPerBlock
+	 *            The number of records in a block.
+	 * @throws IOException
+	 *             If the files cannot be read or written.
+	 ************************
+	 */
+	public static void convertCompressedText(String paraTextFilename, String paraBlockFilename,
+			int paraNumUsers, int paraNumItems, double paraRatingLowerBound,
+			double paraRatingUpperBound, int paraRecordsPerBlock) throws IOException {
+		// Step 1. The mean rating.
+		long tempNumRatings = 0;
+		double tempRatingSum = 0;
+		BufferedReader tempReader = new BufferedReader(new FileReader(paraTextFilename));
+		String tempLine;
+		String[] tempParts;
+		try {
+			while ((tempLine = tempReader.readLine()) != null) {
+				if (tempLine.trim().length() == 0) {
+					continue;
+				} // Of if
+				tempParts = tempLine.split(RatingSystem2DBoolean.SPLIT_SIGN_COMMA);
+				tempRatingSum += Double.parseDouble(tempParts[2]);
+				tempNumRatings++;
+			} // Of while
+		} finally {
+			tempReader.close();
+		} // Of try
+		double tempMeanRating = tempRatingSum / tempNumRatings;
+
+		// Step 2. Write.
+		tempReader = new BufferedReader(new FileReader(paraTextFilename));
+		DataOutputStream tempOutput = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(paraBlockFilename), 1 << 16));
+		try {
+			writeHeader(tempOutput, paraNumUsers, paraNumItems, paraRecordsPerBlock,
+					tempNumRatings, tempMeanRating, paraRatingLowerBound - tempMeanRating,
+					paraRatingUpperBound - tempMeanRating);
+			while ((tempLine = tempReader.readLine()) != null) {
+				if (tempLine.trim().length() == 0) {
+					continue;
+				} // Of if
+				tempParts = tempLine.split(RatingSystem2DBoolean.SPLIT_SIGN_COMMA);
+				tempOutput.writeInt(Integer.parseInt(tempParts[0]));
+				tempOutput.writeInt(Integer.parseInt(tempParts[1]));
+				tempOutput.writeDouble(Double.parseDouble(tempParts[2]) - tempMeanRating);
+			} // Of while
+		} finally {
+			tempReader.close();
+			tempOutput.close();
+		} // Of try
+	}// Of convertCompressedText
+
+	/**
+	 ************************
+	 * Allocate a buffer for one block.
+	 ************************
+	 */
+	public ByteBuffer allocateBlockBuffer() {
+		ByteBuffer resultBuffer = ByteBuffer.allocateDirect(recordsPerBlock * RECORD_BYTES);
+		resultBuffer.order(ByteOrder.BIG_ENDIAN);
+		return resultBuffer;
+	}// Of allocateBlockBuffer
+
+	/**
+	 ***********************************
+	 * Show me.
+	 ***********************************
+	 */
+	public String toString() {
+		return "Rating block file with " + numUsers + " users, " + numItems + " items, "
+				+ numRatings + " ratings, " + recordsPerBlock + " ratings per block.";
+	}// Of toString
+}// Of class RatingBlockFile
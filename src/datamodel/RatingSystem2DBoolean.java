@@ -75,6 +75,26 @@ public class RatingSystem2DBoolean {
 	 */
 	protected boolean[][] trainingIndicationMatrix;
 
+	/**
+	 * Increased whenever the training indication changes.
+	 */
+	protected int trainingVersion;
+
+	/**
+	 * The users of the testing ratings.
+	 */
+	int[] testingUsers;
+
+	/**
+	 * The indices of the testing ratings, i.e., the jth rating of the user.
+	 */
+	int[] testingIndices;
+
+	/**
+	 * The training version for which the testing positions are computed.
+	 */
+	int testingPositionsVersion = -1;
+
 	/**
 	 * Mean rating calculated from the training sets.
 	 */
@@ -100,6 +120,16 @@ public class RatingSystem2DBoolean {
 	 */
 	double likeThreshold;
 
+	/**
+	 * Is the dataset read as a shard of users?
+	 */
+	boolean readAsShard;
+
+	/**
+	 * The fingerprint of the whole data, computed while reading a shard.
+	 */
+	long wholeFingerprint;
+
 	/**
 	 ************************ 
 	 * The first constructor.
@@ -204,8 +234,245 @@ public class RatingSystem2DBoolean {
 		ratingLowerBound = paraDataset.ratingLowerBound;
 		ratingUpperBound = paraDataset.ratingUpperBound;
 		likeThreshold = paraDataset.likeThreshold;
+		readAsShard = paraDataset.readAsShard;
+		wholeFingerprint = paraDataset.wholeFingerprint;
 	}// Of the second constructor
 
+	/**
+	 ************************ 
+	 * The third constructor. A view on some users. The rows of the given
+	 * users are shared with the dataset, including their training indications.
+	 * The rows of other users are empty. Item statistics are also shared.
+	 * 
+	 * @param paraDataset
+	 *            The given dataset.
+	 * @param paraKeptUsers
+	 *            Which users are kept.
+	 ************************ 
+	 */
+	public RatingSystem2DBoolean(RatingSystem2DBoolean paraDataset, boolean[] paraKeptUsers) {
+		numUsers = paraDataset.numUsers;
+		numItems = paraDataset.numItems;
+
+		data = new Triple[numUsers][];
+		trainingIndicationMatrix = new boolean[numUsers][];
+		for (int i = 0; i < numUsers; i++) {
+			if (paraKeptUsers[i]) {
+				data[i] = paraDataset.data[i];
+				trainingIndicationMatrix[i] = paraDataset.trainingIndicationMatrix[i];
+				numRatings += data[i].length;
+			} else {
+				data[i] = new Triple[0];
+				trainingIndicationMatrix[i] = new boolean[0];
+			} // Of if
+		} // Of for i
+
+		itemPopularityArray = paraDataset.itemPopularityArray;
+		itemRatingSumArray = paraDataset.itemRatingSumArray;
+		itemAverageRatingArray = paraDataset.itemAverageRatingArray;
+
+		meanRating = paraDataset.meanRating;
+		ratingLowerBound = paraDataset.ratingLowerBound;
+		ratingUpperBound = paraDataset.ratingUpperBound;
+		likeThreshold = paraDataset.likeThreshold;
+	}// Of the third constructor
+
+	/**
+	 ************************ 
+	 * The fourth constructor. Read only the rows of users in the given shard,
+	 * i.e., users u with u % paraNumShards == paraShard, so that the rows of
+	 * other users are never held in memory. The file is streamed twice: first
+	 * for the mean rating and the sizes of the kept rows, then for the kept
+	 * triples, the item statistics and the fingerprint of the whole data. The
+	 * ratings should be sorted by user, as required by the compressed format,
+	 * so that all of them equal those of the first constructor followed by
+	 * retainUserShard().
+	 * 
+	 * @param paraFilename
+	 *            The data filename.
+	 * @param paraNumUsers
+	 *            The number of users.
+	 * @param paraNumItems
+	 *            The number of items.
+	 * @param paraNumRatings
+	 *            The number of ratings.
+	 * @param paraRatingLowerBound
+	 *            The lower bound of ratings.
+	 * @param paraRatingUpperBound
+	 *            The upper bound of ratings.
+	 * @param paraLikeThrehold
+	 *            The threshold for like.
+	 * @param paraCompress
+	 *            Is the data in compress format?
+	 * @param paraNumShards
+	 *            The number of shards.
+	 * @param paraShard
+	 *            The shard to keep.
+	 * @throws IOException
+	 *             In case the file cannot be read.
+	 ************************ 
+	 */
+	public RatingSystem2DBoolean(String paraFilename, int paraNumUsers, int paraNumItems,
+			int paraNumRatings, double paraRatingLowerBound, double paraRatingUpperBound,
+			double paraLikeThreshold, boolean paraCompress, int paraNumShards, int paraShard)
+			throws IOException {
+		// Step 1. Accept basic settings.
+		numUsers = paraNumUsers;
+		numItems = paraNumItems;
+		numRatings = paraNumRatings;
+		ratingLowerBound = paraRatingLowerBound;
+		ratingUpperBound = paraRatingUpperBound;
+		likeThreshold = paraLikeThreshold;
+
+		data = new Triple[numUsers][];
+		trainingIndicationMatrix = new boolean[numUsers][];
+
+		itemPopularityArray = new int[numItems];
+		itemRatingSumArray = new double[numItems];
+		itemAverageRatingArray = new double[numItems];
+
+		int[] tempUsers = new int[numItems];
+		int[] tempItems = new int[numItems];
+		double[] tempRatings = new double[numItems];
+
+		// Step 2. The first pass for the mean rating and the row sizes.
+		int[] tempRowSizes = new int[numUsers];
+		double tempRatingSum = 0;
+		BufferedReader tempReader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(paraFilename)));
+		String tempLine;
+		for (int i = 0; (tempLine = readShardLine(tempReader, paraCompress, i)) != null; i++) {
+			int tempNumTriples = parseLine(tempLine, i, paraCompress, tempUsers, tempItems,
+					tempRatings);
+			for (int j = 0; j < tempNumTriples; j++) {
+				tempRatingSum += tempRatings[j];
+				if (tempUsers[j] % paraNumShards == paraShard) {
+					tempRowSizes[tempUsers[j]]++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+		tempReader.close();
+		meanRating = tempRatingSum / numRatings;
+
+		for (int i = 0; i < numUsers; i++) {
+			data[i] = new Triple[tempRowSizes[i]];
+			trainingIndicationMatrix[i] = new boolean[tempRowSizes[i]];
+		} // Of for i
+
+		// Step 3. The second pass. The centralized ratings of all users go
+		// to the item statistics and the fingerprint.
+		long tempPrime = 0x100000001b3L;
+		wholeFingerprint = 0xcbf29ce484222325L;
+		wholeFingerprint = (wholeFingerprint ^ numUsers) * tempPrime;
+		wholeFingerprint = (wholeFingerprint ^ numItems) * tempPrime;
+		wholeFingerprint = (wholeFingerprint ^ numRatings) * tempPrime;
+		int[] tempRowFills = new int[numUsers];
+		tempReader = new BufferedReader(new InputStreamReader(new FileInputStream(paraFilename)));
+		for (int i = 0; (tempLine = readShardLine(tempReader, paraCompress, i)) != null; i++) {
+			int tempNumTriples = parseLine(tempLine, i, paraCompress, tempUsers, tempItems,
+					tempRatings);
+			for (int j = 0; j < tempNumTriples; j++) {
+				double tempRating = tempRatings[j] - meanRating;
+				wholeFingerprint = mixTriple(wholeFingerprint, tempUsers[j], tempItems[j],
+						tempRating);
+				itemPopularityArray[tempItems[j]]++;
+				itemRatingSumArray[tempItems[j]] += tempRating;
+				if (tempUsers[j] % paraNumShards == paraShard) {
+					data[tempUsers[j]][tempRowFills[tempUsers[j]]++] = new Triple(tempUsers[j],
+							tempItems[j], tempRating);
+				} // Of if
+			} // Of for j
+		} // Of for i
+		tempReader.close();
+		readAsShard = true;
+
+		// Step 4. Centralize the bounds as centralize() does.
+		ratingLowerBound -= meanRating;
+		ratingUpperBound -= meanRating;
+		likeThreshold -= meanRating;
+
+		for (int i = 0; i < numItems; i++) {
+			// 0.0001 to avoid NaN due to unrated items.
+			itemAverageRatingArray[i] = (itemRatingSumArray[i] + 0.0001)
+					/ (itemPopularityArray[i] + 0.0001);
+		} // Of for i
+	}// Of the fourth constructor
+
+	/**
+	 ************************ 
+	 * Read the next line of the file for the fourth constructor. A compressed
+	 * file has one line for each rating, while the other format has one line
+	 * for each user.
+	 * 
+	 * @param paraReader
+	 *            The reader.
+	 * @param paraCompress
+	 *            Is the data in compress format?
+	 * @param paraLineIndex
+	 *            The index of the line.
+	 * @return The line, or null at the end.
+	 * @throws IOException
+	 *             In case the file cannot be read.
+	 ************************ 
+	 */
+	private String readShardLine(BufferedReader paraReader, boolean paraCompress,
+			int paraLineIndex) throws IOException {
+		if (paraCompress && (paraLineIndex >= numRatings)) {
+			return null;
+		} // Of if
+
+		String resultLine = paraReader.readLine();
+		if (paraCompress && (resultLine == null)) {
+			throw new IOException("Only " + paraLineIndex + " ratings, " + numRatings
+					+ " expected.");
+		} // Of if
+		return resultLine;
+	}// Of readShardLine
+
+	/**
+	 ************************ 
+	 * Parse the triples of a line in the same way as readData() or
+	 * readCompressedData().
+	 * 
+	 * @param paraLine
+	 *            The line.
+	 * @param paraLineIndex
+	 *            The index of the line, which is the user in the other format.
+	 * @param paraCompress
+	 *            Is the data in compress format?
+	 * @param paraUsers
+	 *            For storing the users.
+	 * @param paraItems
+	 *            For storing the items.
+	 * @param paraRatings
+	 *            For storing the ratings before centralization.
+	 * @return The number of triples.
+	 ************************ 
+	 */
+	private int parseLine(String paraLine, int paraLineIndex, boolean paraCompress,
+			int[] paraUsers, int[] paraItems, double[] paraRatings) {
+		if (paraCompress) {
+			String[] tempParts = paraLine.split(SPLIT_SIGN_COMMA);
+			paraUsers[0] = Integer.parseInt(tempParts[0]);
+			paraItems[0] = Integer.parseInt(tempParts[1]);
+			paraRatings[0] = Double.parseDouble(tempParts[2]);
+			return 1;
+		} // Of if
+
+		String[] tempParts = paraLine.split(SPLIT_SIGN_TAB);
+		int resultNumTriples = 0;
+		for (int i = 1; i < numItems; i++) {
+			double tempRating = Double.parseDouble(tempParts[i]);
+			if (tempRating != DEFAULT_MISSING_RATING) {
+				paraUsers[resultNumTriples] = paraLineIndex;
+				paraItems[resultNumTriples] = i - 1;
+				paraRatings[resultNumTriples] = tempRating;
+				resultNumTriples++;
+			} // Of if
+		} // Of for i
+		return resultNumTriples;
+	}// Of parseLine
+
 	/**
 	 ************************ 
 	 * Read the data from the file.
@@ -371,6 +638,8 @@ public class RatingSystem2DBoolean {
 			} // Of for j
 		} // Of for i
 
+		trainingVersion++;
+
 		System.out.println("" + tempTrainingSize + " training instances.");
 		System.out.println("" + tempTestingSize + " testing instances.");
 	}// Of initializeTraining
@@ -386,6 +655,8 @@ public class RatingSystem2DBoolean {
 				trainingIndicationMatrix[i][j] = true;
 			} // Of for j
 		} // Of for i
+
+		trainingVersion++;
 	}// Of setAllTraining
 
 	/**
@@ -400,6 +671,8 @@ public class RatingSystem2DBoolean {
 		for (int i = 0; i < trainingIndicationMatrix[paraUser].length; i++) {
 			trainingIndicationMatrix[paraUser][i] = true;
 		} // Of for i
+
+		trainingVersion++;
 	}// Of setUserAllTraining
 
 	/**
@@ -413,7 +686,27 @@ public class RatingSystem2DBoolean {
 	 ************************ 
 	 */
 	public void setUserTraining(int paraUser, int[] paraTrainingItems) {
-		if ((paraTrainingItems == null) || (paraTrainingItems.length == 0)) {
+		setUserTraining(paraUser, paraTrainingItems,
+				(paraTrainingItems == null) ? 0 : paraTrainingItems.length);
+	}// Of setUserTraining
+
+	/**
+	 ************************ 
+	 * Set some data of the given user for training, where only a prefix of
+	 * the item array is valid. It is for callers reusing a buffer.
+	 * 
+	 * @param paraUser
+	 *            The given user.
+	 * @param paraTrainingItems
+	 *            The item indices for the given user as training, in the order
+	 *            of the ratings of the user.
+	 * @param paraLength
+	 *            The valid length of the array.
+	 ************************ 
+	 */
+	public void setUserTraining(int paraUser, int[] paraTrainingItems, int paraLength) {
+		trainingVersion++;
+		if ((paraTrainingItems == null) || (paraLength == 0)) {
 			// System.out.println("Warning in RatingSystem2DBoolean(int,
 			// int[]):\r\n user #"
 			// + paraUser + " contains no training item.");
@@ -426,7 +719,7 @@ public class RatingSystem2DBoolean {
 			if (data[paraUser][i].item == paraTrainingItems[tempItemIndex]) {
 				trainingIndicationMatrix[paraUser][i] = true;
 				tempItemIndex++;
-				if (tempItemIndex == paraTrainingItems.length) {
+				if (tempItemIndex == paraLength) {
 					break;
 				} // Of if
 			} else {
@@ -450,6 +743,72 @@ public class RatingSystem2DBoolean {
 		return numUsers;
 	}// Of getNumUsers
 
+	/**
+	 ************************ 
+	 * Getter.
+	 ************************ 
+	 */
+	public int getTrainingVersion() {
+		return trainingVersion;
+	}// Of getTrainingVersion
+
+	/**
+	 ************************ 
+	 * Compute the positions of the testing ratings if the training indication
+	 * has changed since the last computation.
+	 ************************ 
+	 */
+	void updateTestingPositions() {
+		if (testingPositionsVersion == trainingVersion) {
+			return;
+		} // Of if
+
+		int tempNumTesting = 0;
+		for (int i = 0; i < numUsers; i++) {
+			for (int j = 0; j < trainingIndicationMatrix[i].length; j++) {
+				if (!trainingIndicationMatrix[i][j]) {
+					tempNumTesting++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+
+		testingUsers = new int[tempNumTesting];
+		testingIndices = new int[tempNumTesting];
+		tempNumTesting = 0;
+		for (int i = 0; i < numUsers; i++) {
+			for (int j = 0; j < trainingIndicationMatrix[i].length; j++) {
+				if (!trainingIndicationMatrix[i][j]) {
+					testingUsers[tempNumTesting] = i;
+					testingIndices[tempNumTesting] = j;
+					tempNumTesting++;
+				} // Of if
+			} // Of for j
+		} // Of for i
+
+		testingPositionsVersion = trainingVersion;
+	}// Of updateTestingPositions
+
+	/**
+	 ************************ 
+	 * Getter. The users of the testing ratings. It is aligned with
+	 * getTestingIndices(). Both should not be changed.
+	 ************************ 
+	 */
+	public synchronized int[] getTestingUsers() {
+		updateTestingPositions();
+		return testingUsers;
+	}// Of getTestingUsers
+
+	/**
+	 ************************ 
+	 * Getter. The indices of the testing ratings for respective users.
+	 ************************ 
+	 */
+	public synchronized int[] getTestingIndices() {
+		updateTestingPositions();
+		return testingIndices;
+	}// Of getTestingIndices
+
 	/**
 	 ************************ 
 	 * Getter.
@@ -541,6 +900,7 @@ public class RatingSystem2DBoolean {
 	 */
 	public void setTrainIndication(int paraUser, int paraIndex, boolean paraValue) {
 		trainingIndicationMatrix[paraUser][paraIndex] = paraValue;
+		trainingVersion++;
 	}// Of setTrainIndication
 
 	/**
@@ -648,6 +1008,83 @@ public class RatingSystem2DBoolean {
 		} // Of for i
 	}// Of computeAverage
 
+	/**
+	 ************************ 
+	 * Keep only the rows of users in the given shard, i.e., users u with u %
+	 * paraNumShards == paraShard. Rows of other users become empty so that
+	 * their memory can be reclaimed. The mean rating and the bounds are
+	 * unchanged, hence consistent among shards.
+	 * 
+	 * @param paraNumShards
+	 *            The number of shards.
+	 * @param paraShard
+	 *            The shard to keep.
+	 ************************ 
+	 */
+	public void retainUserShard(int paraNumShards, int paraShard) {
+		for (int i = 0; i < numUsers; i++) {
+			if (i % paraNumShards != paraShard) {
+				data[i] = new Triple[0];
+				trainingIndicationMatrix[i] = new boolean[0];
+			} // Of if
+		} // Of for i
+
+		trainingVersion++;
+	}// Of retainUserShard
+
+	/**
+	 ************************ 
+	 * Compute a fingerprint of the data, i.e., the size and all triples. It
+	 * does not depend on the training indication. For a dataset read as a
+	 * shard, it is that of the whole data computed while reading.
+	 * 
+	 * @return The fingerprint.
+	 ************************ 
+	 */
+	public long computeFingerprint() {
+		if (readAsShard) {
+			return wholeFingerprint;
+		} // Of if
+
+		// FNV-1a style hashing on 64 bits.
+		long resultFingerprint = 0xcbf29ce484222325L;
+		long tempPrime = 0x100000001b3L;
+		resultFingerprint = (resultFingerprint ^ numUsers) * tempPrime;
+		resultFingerprint = (resultFingerprint ^ numItems) * tempPrime;
+		resultFingerprint = (resultFingerprint ^ numRatings) * tempPrime;
+		for (int i = 0; i < data.length; i++) {
+			for (int j = 0; j < data[i].length; j++) {
+				resultFingerprint = mixTriple(resultFingerprint, data[i][j].user,
+						data[i][j].item, data[i][j].rating);
+			} // Of for j
+		} // Of for i
+
+		return resultFingerprint;
+	}// Of computeFingerprint
+
+	/**
+	 ************************ 
+	 * Mix a triple into a fingerprint.
+	 * 
+	 * @param paraFingerprint
+	 *            The fingerprint so far.
+	 * @param paraUser
+	 *            The user.
+	 * @param paraItem
+	 *            The item.
+	 * @param paraRating
+	 *            The centralized rating.
+	 * @return The new fingerprint.
+	 ************************ 
+	 */
+	private static long mixTriple(long paraFingerprint, int paraUser, int paraItem,
+			double paraRating) {
+		long tempPrime = 0x100000001b3L;
+		long resultFingerprint = (paraFingerprint ^ paraUser) * tempPrime;
+		resultFingerprint = (resultFingerprint ^ paraItem) * tempPrime;
+		return (resultFingerprint ^ Double.doubleToLongBits(paraRating)) * tempPrime;
+	}// Of mixTriple
+
 	/**
 	 *********************************** 
 	 * Show me.
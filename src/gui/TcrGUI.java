@@ -158,6 +158,11 @@ public class TcrGUI implements ActionListener, ItemListener, TextListener {
 	 */
 	private DoubleField glTransformVField;
 
+	/**
+	 * Checkbox for reusing the pretrained model stored beside the data file.
+	 */
+	private Checkbox reuseCheckpointCheckbox;
+
 	/**
 	 * Checkbox for variable tracking.
 	 */
@@ -323,7 +328,8 @@ public class TcrGUI implements ActionListener, ItemListener, TextListener {
 		glTransformVField = new DoubleField("1.0");
 		mfParametersPanel.add(glTransformVField);
 
-		mfParametersPanel.add(new Label(" "));
+		reuseCheckpointCheckbox = new Checkbox(" Reuse pretrained model ", false);
+		mfParametersPanel.add(reuseCheckpointCheckbox);
 		mfParametersPanel.add(new Label(" "));
 
 		processTrackingCheckbox = new Checkbox(" Process tracking ", false);
@@ -462,7 +468,11 @@ public class TcrGUI implements ActionListener, ItemListener, TextListener {
 				.setIncrementalTrainRounds(tempIncrementalTrainRounds);
 
 		System.out.println("Before pretrain");
-		tempTcr.stage2Recommender.pretrain();
+		if (reuseCheckpointCheckbox.getState()) {
+			tempTcr.stage2Recommender.pretrain(tempFilename + ".checkpoint");
+		} else {
+			tempTcr.stage2Recommender.pretrain();
+		} // Of if
 		System.out.println("After pretrain");
 
 		double tempMinCost = Double.MAX_VALUE;